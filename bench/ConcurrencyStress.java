@@ -0,0 +1,119 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Mixed read/write stress over {@link AthleteRunService}: T threads hammer random
+ * athletes with addRun and getStats for a fixed time, for T = 1, 2, 4 ... up to
+ * twice the core count (or --max-threads). Prints throughput and speedup over one thread, then checks
+ * that every acknowledged write is visible; exits with 1 if one is not.
+ *
+ * <pre>
+ *   java -cp out ConcurrencyStress --athletes=1000 --seconds=5 --writes=20 [--max-threads=N] [--fsync] [--group-commit]
+ * </pre>
+ */
+public class ConcurrencyStress {
+
+    public static void main(String[] args) throws Exception {
+        int athletes     = 1_000;
+        int seconds      = 5;
+        int writePercent = 20;
+        int maxThreads   = 2 * Runtime.getRuntime().availableProcessors();
+        boolean fsync = false, groupCommit = false;
+        for (String a : args) {
+            if      (a.startsWith("--athletes=")) athletes     = Integer.parseInt(a.substring(11));
+            else if (a.startsWith("--seconds="))  seconds      = Integer.parseInt(a.substring(10));
+            else if (a.startsWith("--writes="))   writePercent = Integer.parseInt(a.substring(9));
+            else if (a.startsWith("--max-threads=")) maxThreads = Integer.parseInt(a.substring(14));
+            else if (a.equals("--fsync"))          fsync        = true;
+            else if (a.equals("--group-commit"))   groupCommit  = true;
+            else throw new IllegalArgumentException("Unknown option " + a);
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%d cores, %d athletes, %d%% writes, %ds per step, fsync=%b, group commit=%b%n",
+                cores, athletes, writePercent, seconds, fsync, groupCommit);
+
+        // JIT warmup so the single-thread baseline is not measured cold
+        Path warm = Files.createTempDirectory("runstress");
+        try (AthleteRunService service = new AthleteRunService(warm)) {
+            run(service, 1, athletes, writePercent, 1, new LongAdder(), new LongAdder());
+        }
+        deleteTree(warm);
+
+        double baseline = 0;
+        boolean lost = false;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            Path dir = Files.createTempDirectory("runstress");
+            BatchingRunWriter writer = groupCommit ? new BatchingRunWriter() : null;
+            try (AthleteRunService service = new AthleteRunService(dir, fsync, writer)) {
+                for (int i = 0; i < athletes; i++) service.forAthlete("a" + i);
+
+                LongAdder reads = new LongAdder(), writes = new LongAdder();
+                double opsPerSec = run(service, threads, athletes, writePercent, seconds, reads, writes);
+                if (threads == 1) baseline = opsPerSec;
+
+                long visible = 0;
+                for (int i = 0; i < athletes; i++) visible += service.forAthlete("a" + i).getRunCount();
+                String check = visible == writes.sum() ? "ok" : "LOST " + (writes.sum() - visible);
+                lost |= visible != writes.sum();
+
+                System.out.printf("threads=%-3d %,12.0f ops/s  speedup %.2fx  (reads %,d, writes %,d, visible %s)%n",
+                        threads, opsPerSec, opsPerSec / baseline, reads.sum(), writes.sum(), check);
+                if (writer != null) System.out.println("            " + service.writerMetrics());
+            }
+            deleteTree(dir);
+        }
+        if (lost) System.exit(1);
+    }
+
+    static double run(AthleteRunService service, int threads, int athletes, int writePercent, int seconds,
+                      LongAdder reads, LongAdder writes) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        long[] deadline = new long[1];
+
+        for (int t = 0; t < threads; t++) {
+            Thread w = new Thread(() -> {
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                LocalDate today = LocalDate.now();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (System.nanoTime() < deadline[0]) {
+                    String id = "a" + rnd.nextInt(athletes);
+                    if (rnd.nextInt(100) < writePercent) {
+                        service.addRun(id, Run.ofMiles(today.minusDays(rnd.nextInt(60)), 1 + rnd.nextDouble() * 10, 1800));
+                        writes.increment();
+                    } else {
+                        service.getStats(id, today.minusDays(30), today);
+                        reads.increment();
+                    }
+                }
+            });
+            workers.add(w);
+            w.start();
+        }
+
+        long begin = System.nanoTime();
+        deadline[0] = begin + seconds * 1_000_000_000L;
+        start.countDown();
+        for (Thread w : workers) w.join();
+        double elapsed = (System.nanoTime() - begin) / 1e9;
+        return (reads.sum() + writes.sum()) / elapsed;
+    }
+
+    static void deleteTree(Path dir) throws java.io.IOException {
+        try (var paths = Files.walk(dir)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * addRun latency with live event subscribers, per overflow policy. Each scenario
+ * adds (and sometimes edits) N runs with the weekly-progress, streak and
+ * personal-best views attached, plus one deliberately slow subscriber that spends
+ * --slow-us per event. Prints add latency percentiles, what the publisher dropped
+ * or queued, and how often views had to reseed, then checks every view against
+ * the service's own queries once the stream has drained.
+ *
+ * <pre>
+ *   java -cp out EventPipelineBench --runs=20000 --capacity=256 --slow-us=100
+ * </pre>
+ */
+public class EventPipelineBench {
+
+    static final Clock CLOCK = Clock.fixed(LocalDate.of(2026, 6, 17).atStartOfDay(ZoneId.of("UTC")).toInstant(),
+            ZoneId.of("UTC"));
+
+    public static void main(String[] args) throws Exception {
+        int runs     = 20_000;
+        int capacity = 256;
+        int slowUs   = 100;
+        for (String a : args) {
+            if      (a.startsWith("--runs="))     runs     = Integer.parseInt(a.substring(7));
+            else if (a.startsWith("--capacity=")) capacity = Integer.parseInt(a.substring(11));
+            else if (a.startsWith("--slow-us="))  slowUs   = Integer.parseInt(a.substring(10));
+            else throw new IllegalArgumentException("Unknown option " + a);
+        }
+        System.out.printf("%,d adds per scenario, queue capacity %d, slow subscriber %d us/event%n",
+                runs, capacity, slowUs);
+
+        scenario("warmup", runs, capacity, RunEventPublisher.Overflow.BUFFER, false, 0, true);
+        scenario("no subscribers", runs, capacity, RunEventPublisher.Overflow.BUFFER, false, 0, false);
+        scenario("views only", runs, capacity, RunEventPublisher.Overflow.BUFFER, true, 0, false);
+        for (RunEventPublisher.Overflow policy : RunEventPublisher.Overflow.values()) {
+            scenario("views+slow " + policy, runs, capacity, policy, true, slowUs, false);
+        }
+    }
+
+    static void scenario(String name, int runs, int capacity, RunEventPublisher.Overflow policy,
+                         boolean views, int slowUs, boolean quiet) throws Exception {
+        Path dir = Files.createTempDirectory("runevents");
+        RunEventPublisher events = new RunEventPublisher(capacity, policy);
+        RunService service = new RunService(new RunRepository(dir.resolve("runs.csv").toString()), null, CLOCK, events);
+
+        LongAdder pbs = new LongAdder();
+        WeeklyProgressView weekly = null;
+        StreakView streaks = null;
+        PersonalBestView bests = null;
+        if (views) {
+            weekly  = service.attach(new WeeklyProgressView(CLOCK));
+            streaks = service.attach(new StreakView(CLOCK));
+            bests   = service.attach(new PersonalBestView(pb -> pbs.increment()));
+        }
+        SlowSubscriber slow = slowUs > 0 ? new SlowSubscriber(slowUs * 1_000L) : null;
+        if (slow != null) events.subscribe(slow);
+
+        Random rnd = new Random(42);
+        long[] nanos = new long[runs];
+        List<Long> ids = new ArrayList<>();
+        LocalDate today = LocalDate.now(CLOCK);
+        for (int i = 0; i < runs; i++) {
+            Run run = randomRun(rnd, today);
+            long start = System.nanoTime();
+            ids.add(service.addRun(run).getId());
+            nanos[i] = System.nanoTime() - start;
+            if (rnd.nextInt(20) == 0) { // ~5% edits, half updates, half deletes
+                long id = ids.get(rnd.nextInt(ids.size()));
+                if (rnd.nextBoolean()) service.updateRun(id, randomRun(rnd, today));
+                else service.deleteRun(id);
+            }
+        }
+        RunEventPublisher.Metrics atEnd = events.metrics();
+        service.close();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (events.hasSubscribers() && System.nanoTime() < deadline) Thread.sleep(10);
+        ConcurrencyStress.deleteTree(dir);
+        if (quiet) return;
+
+        Arrays.sort(nanos);
+        System.out.printf("%-26s addRun p50 %6.1f us  p99 %7.1f us  max %8.1f us%n", name,
+                nanos[runs / 2] / 1e3, nanos[(int) (runs * 0.99)] / 1e3, nanos[runs - 1] / 1e3);
+        System.out.printf("%-26s published %,d, dropped %,d%n", "", atEnd.published(), atEnd.dropped());
+        for (RunEventPublisher.SubscriberMetrics m : atEnd.subscribers()) {
+            System.out.printf("%-26s   %-20s delivered %,7d  dropped %,7d  queued %,6d  max queued %,6d%n", "",
+                    label(m.subscriber()), m.delivered(), m.dropped(), m.queued(), m.maxQueued());
+        }
+        if (views) {
+            System.out.printf("%-26s reseeds: weekly %d, streaks %d, bests %d; %d live PBs%n", "",
+                    weekly.reseeds(), streaks.reseeds(), bests.reseeds(), pbs.sum());
+            System.out.printf("%-26s views match service: %s%n", "", check(service, weekly, streaks, bests));
+        }
+    }
+
+    static Run randomRun(Random rnd, LocalDate today) {
+        LocalDate date = today.minusDays(rnd.nextInt(730));
+        double miles   = rnd.nextInt(50) == 0 ? 13.1 + rnd.nextDouble() * 14 : 1 + rnd.nextDouble() * 9;
+        long seconds   = Math.round(miles * (420 + rnd.nextInt(240)));
+        return Run.ofMiles(date, Math.round(miles * 100) / 100.0, seconds);
+    }
+
+    static String label(String subscriber) {
+        int at = subscriber.indexOf('@');
+        return at < 0 ? subscriber : subscriber.substring(0, at);
+    }
+
+    // recomputes each view from the service's runs
+    static String check(RunService service, WeeklyProgressView weekly, StreakView streaks, PersonalBestView bests) {
+        List<String> bad = new ArrayList<>();
+
+        WeeklyProgressView.Progress p = weekly.progress();
+        if (Math.abs(p.milesThisWeek() - service.getThisCalendarWeek().totalMiles()) > 1e-6
+                || p.goalMiles() != service.getNextWeeklyGoalMiles()) bad.add("weekly " + p);
+
+        Set<Long> days = new HashSet<>();
+        for (Run r : service.getAllRuns()) days.add(r.getDate().toEpochDay());
+        long day = LocalDate.now(CLOCK).toEpochDay();
+        if (!days.contains(day)) day--;
+        int current = 0;
+        while (days.contains(day - current)) current++;
+        int longest = 0;
+        for (long d : days) {
+            if (days.contains(d - 1)) continue;
+            int len = 1;
+            while (days.contains(d + len)) len++;
+            longest = Math.max(longest, len);
+        }
+        StreakView.Streaks s = streaks.streaks();
+        if (s.current() != current || s.longest() != longest) bad.add("streaks " + s + " vs " + current + "/" + longest);
+
+        double[] distances = {RunService.HALF_MARATHON, RunService.MARATHON};
+        List<PersonalBestView.PersonalBest> pbs = bests.bests();
+        for (int d = 0; d < distances.length; d++) {
+            long best = Long.MAX_VALUE;
+            for (Run r : service.getAllRuns()) {
+                if (r.getDurationSeconds() <= 0 || r.getDistanceMiles() < distances[d] - 0.05) continue;
+                best = Math.min(best, Math.round(r.getDurationSeconds() * Math.min(1.0, distances[d] / r.getDistanceMiles())));
+            }
+            PersonalBestView.PersonalBest pb = pbs.get(d);
+            if (pb == null ? best != Long.MAX_VALUE : pb.seconds() != best) bad.add("pb " + pb + " vs " + best);
+        }
+        return bad.isEmpty() ? "ok" : "MISMATCH " + bad;
+    }
+
+    // one event at a time, spinning for the configured cost of each
+    static final class SlowSubscriber implements Flow.Subscriber<RunEvent> {
+        private final long costNanos;
+        private Flow.Subscription subscription;
+
+        SlowSubscriber(long costNanos) {
+            this.costNanos = costNanos;
+        }
+
+        @Override public void onSubscribe(Flow.Subscription s) { subscription = s; s.request(1); }
+        @Override public void onError(Throwable t)              {}
+        @Override public void onComplete()                      {}
+
+        @Override
+        public void onNext(RunEvent e) {
+            LockSupport.parkNanos(costNanos);
+            subscription.request(1);
+        }
+
+        @Override
+        public String toString() {
+            return "SlowSubscriber";
+        }
+    }
+}
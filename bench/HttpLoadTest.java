@@ -0,0 +1,155 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed-loop load test for {@link RunHttpServer}: C clients each keep exactly one
+ * request in flight (10% POST runs, the rest stats / history / weekly-goal reads)
+ * for a fixed time, then p50/p90/p99/max latency and throughput are reported.
+ * Starts an in-process server on a temp directory unless --url is given.
+ *
+ * <pre>
+ *   java -cp out HttpLoadTest --clients=10000 --seconds=20 --athletes=1000
+ *   java -cp out HttpLoadTest --url=http://127.0.0.1:8080 --clients=10000
+ * </pre>
+ *
+ * Each client holds a socket open; raise the open-file limit (ulimit -n) above
+ * twice the client count when the server runs in the same process.
+ */
+public class HttpLoadTest {
+
+    private static final int MAX_SAMPLES = 5_000_000;
+
+    public static void main(String[] args) throws Exception {
+        String url     = null;
+        int clients    = 10_000;
+        int seconds    = 20;
+        int athletes   = 1_000;
+        for (String a : args) {
+            if      (a.startsWith("--url="))      url      = a.substring(6);
+            else if (a.startsWith("--clients="))  clients  = Integer.parseInt(a.substring(10));
+            else if (a.startsWith("--seconds="))  seconds  = Integer.parseInt(a.substring(10));
+            else if (a.startsWith("--athletes=")) athletes = Integer.parseInt(a.substring(11));
+            else throw new IllegalArgumentException("Unknown option " + a);
+        }
+
+        Path dir = null;
+        AthleteRunService service = null;
+        RunHttpServer server = null;
+        if (url == null) {
+            dir = Files.createTempDirectory("runhttp");
+            service = new AthleteRunService(dir);
+            server = new RunHttpServer(service, 0);
+            server.start();
+            url = "http://127.0.0.1:" + server.port();
+        }
+
+        HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(30))
+                .build();
+
+        long[] samples = new long[MAX_SAMPLES];
+        AtomicInteger sampleCount = new AtomicInteger();
+        AtomicLong errors = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(clients);
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+
+        System.out.printf("%d clients against %s for %ds...%n", clients, url, seconds);
+        long begin = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            new Client(http, url, athletes, deadline, samples, sampleCount, errors, done).next();
+        }
+        done.await();
+        double elapsed = (System.nanoTime() - begin) / 1e9;
+
+        int n = Math.min(sampleCount.get(), MAX_SAMPLES);
+        long[] lat = Arrays.copyOf(samples, n);
+        Arrays.sort(lat);
+        System.out.printf("requests %,d  errors %,d  throughput %,.0f req/s%n", n, errors.get(), n / elapsed);
+        if (n > 0) {
+            System.out.printf("latency ms  p50 %.2f  p90 %.2f  p99 %.2f  max %.2f%n",
+                    pct(lat, 0.50), pct(lat, 0.90), pct(lat, 0.99), lat[n - 1] / 1e6);
+        }
+
+        if (server != null) {
+            server.close();
+            service.close();
+            ConcurrencyStress.deleteTree(dir);
+        }
+    }
+
+    static double pct(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))] / 1e6;
+    }
+
+    /** One simulated user: sends its next request only when the previous one completes. */
+    static final class Client {
+        private final HttpClient http;
+        private final String base;
+        private final int athletes;
+        private final long deadline;
+        private final long[] samples;
+        private final AtomicInteger sampleCount;
+        private final AtomicLong errors;
+        private final CountDownLatch done;
+
+        Client(HttpClient http, String base, int athletes, long deadline, long[] samples,
+               AtomicInteger sampleCount, AtomicLong errors, CountDownLatch done) {
+            this.http = http;
+            this.base = base;
+            this.athletes = athletes;
+            this.deadline = deadline;
+            this.samples = samples;
+            this.sampleCount = sampleCount;
+            this.errors = errors;
+            this.done = done;
+        }
+
+        void next() {
+            if (System.nanoTime() >= deadline) {
+                done.countDown();
+                return;
+            }
+            long start = System.nanoTime();
+            http.sendAsync(request(), HttpResponse.BodyHandlers.discarding())
+                .whenComplete((resp, err) -> {
+                    if (err != null || resp.statusCode() >= 300) {
+                        errors.incrementAndGet();
+                    } else {
+                        int i = sampleCount.getAndIncrement();
+                        if (i < samples.length) samples[i] = System.nanoTime() - start;
+                    }
+                    next();
+                });
+        }
+
+        private HttpRequest request() {
+            ThreadLocalRandom rnd = ThreadLocalRandom.current();
+            String athlete = base + "/athletes/a" + rnd.nextInt(athletes);
+            int kind = rnd.nextInt(10);
+            if (kind == 0) {
+                String date = LocalDate.now().minusDays(rnd.nextInt(365)).toString();
+                return HttpRequest.newBuilder(URI.create(athlete + "/runs?date=" + date
+                                + "&miles=" + (1 + rnd.nextInt(12)) + "&duration=" + (600 + rnd.nextInt(5000))))
+                        .POST(HttpRequest.BodyPublishers.noBody()).build();
+            }
+            String path = switch (kind) {
+                case 1, 2 -> "/runs?limit=25";
+                case 3    -> "/weekly-goal";
+                default   -> "/stats?from=" + LocalDate.now().minusDays(30);
+            };
+            return HttpRequest.newBuilder(URI.create(athlete + path)).GET().build();
+        }
+    }
+}
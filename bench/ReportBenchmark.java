@@ -0,0 +1,81 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * Times {@link RunReports} over a synthetic multi-athlete data directory on fork-join
+ * pools of 1, 2, 4 ... up to the core count (or --max-threads), prints ms per report
+ * and speedup over one thread, and checks every pool size produces the same results.
+ *
+ * <pre>
+ *   java -cp out ReportBenchmark --athletes=2000 --runs=2000 --reps=5 [--max-threads=N]
+ * </pre>
+ */
+public class ReportBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int athletes   = 2_000;
+        int runs       = 2_000;
+        int reps       = 5;
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        for (String a : args) {
+            if      (a.startsWith("--athletes="))    athletes   = Integer.parseInt(a.substring(11));
+            else if (a.startsWith("--runs="))        runs       = Integer.parseInt(a.substring(7));
+            else if (a.startsWith("--reps="))        reps       = Integer.parseInt(a.substring(7));
+            else if (a.startsWith("--max-threads=")) maxThreads = Integer.parseInt(a.substring(14));
+            else throw new IllegalArgumentException("Unknown option " + a);
+        }
+
+        Path dir = Files.createTempDirectory("runreports");
+        try (AthleteRunService service = new AthleteRunService(dir)) {
+            for (int i = 0; i < athletes; i++) {
+                new RunRepository(dir.resolve("a" + i + ".csv").toString(), false, 0)
+                        .save(SyntheticRuns.history(runs, i));
+            }
+            for (int i = 0; i < athletes; i++) service.forAthlete("a" + i); // load outside the timings
+            System.out.printf("%d cores, %,d athletes x %,d runs%n",
+                    Runtime.getRuntime().availableProcessors(), athletes, runs);
+
+            LocalDate today = LocalDate.now();
+            LocalDate yearAgo = today.minusYears(1);
+            String[] names = {"weeklyLeaderboard", "totalsByPeriod.WEEK(1y)", "totalsByPeriod.MONTH(20y)", "paceDistribution(1y)"};
+            double[] baseline = new double[names.length];
+            String[] expected = new String[names.length];
+
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                RunReports reports = new RunReports(service, pool);
+                List<Supplier<Object>> cases = List.of(
+                        () -> reports.weeklyLeaderboard(today, 10),
+                        () -> reports.totalsByPeriod(RunReports.Period.WEEK, yearAgo, today),
+                        () -> reports.totalsByPeriod(RunReports.Period.MONTH, today.minusYears(20), today),
+                        () -> {
+                            RunReports.PaceDistribution d = reports.paceDistribution(yearAgo, today);
+                            return List.of(d.percentile(0.5), d.percentile(0.9), d.timedRuns(), d.slower(), d.untimed());
+                        });
+
+                for (int c = 0; c < cases.size(); c++) {
+                    String result = String.valueOf(cases.get(c).get()); // warmup
+                    long best = Long.MAX_VALUE;
+                    for (int r = 0; r < reps; r++) {
+                        long start = System.nanoTime();
+                        cases.get(c).get();
+                        best = Math.min(best, System.nanoTime() - start);
+                    }
+                    double ms = best / 1e6;
+                    if (threads == 1) {
+                        baseline[c] = ms;
+                        expected[c] = result;
+                    }
+                    System.out.printf("threads=%-3d %-28s %9.2f ms  speedup %.2fx  %s%n", threads, names[c], ms,
+                            baseline[c] / ms, result.equals(expected[c]) ? "same" : "MISMATCH");
+                }
+                pool.shutdown();
+            }
+        }
+        ConcurrencyStress.deleteTree(dir);
+    }
+}
@@ -0,0 +1,113 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Differential check of the day/week/month/year rollups. A random history is built
+ * and edited through {@link RunService}, and after every step {@code getTotals} is
+ * compared with {@code getStats} (the {@link RunIndex} answer) and with a scan that
+ * sums duration row by row. Ranges are random, aligned to week, month and year
+ * bounds, empty, or open-ended. The service is then reopened from its saved state
+ * and checked again. Exits non-zero if any range disagrees.
+ *
+ * <pre>
+ *   java -cp out RunRollupsCheck [--seed=N] [--runs=N]
+ * </pre>
+ */
+public class RunRollupsCheck {
+
+    private static final LocalDate START = LocalDate.of(2019, 1, 1);
+    private static final int DAYS = 6 * 365;
+
+    private static int checked;
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        long seed = 42;
+        int runs = 3_000;
+        for (String a : args) {
+            if (a.startsWith("--seed=")) seed = Long.parseLong(a.substring(7));
+            else if (a.startsWith("--runs=")) runs = Integer.parseInt(a.substring(7));
+            else throw new IllegalArgumentException("Unknown option " + a);
+        }
+        Random rnd = new Random(seed);
+        Path dir = Files.createTempDirectory("rollups");
+        String file = dir.resolve("runs.csv").toString();
+        try {
+            RunService service = new RunService(new WalRunRepository(file));
+            compare("empty", service, rnd);
+
+            List<Long> ids = new ArrayList<>();
+            for (int i = 0; i < runs; i++) ids.add(service.addRun(randomRun(rnd)).getId());
+            compare("adds", service, rnd);
+
+            List<Run> batch = new ArrayList<>();
+            for (int i = 0; i < runs / 10; i++) batch.add(randomRun(rnd));
+            for (Run r : service.addRuns(batch)) ids.add(r.getId());
+            compare("back-dated batch", service, rnd);
+
+            for (int i = 0; i < runs / 5; i++) {
+                long id = ids.get(rnd.nextInt(ids.size()));
+                if (rnd.nextBoolean()) service.updateRun(id, randomRun(rnd));
+                else if (service.deleteRun(id)) ids.remove(id);
+                if (i % 50 == 0) compare("edits", service, rnd);
+            }
+            compare("edits", service, rnd);
+            service.close();
+
+            service = new RunService(new WalRunRepository(file));
+            compare("reopened", service, rnd);
+            service.close();
+        } finally {
+            ConcurrencyStress.deleteTree(dir);
+        }
+        System.out.println(checked + " ranges checked, " + failures + " mismatch(es)");
+        if (failures > 0) System.exit(1);
+    }
+
+    private static Run randomRun(Random rnd) {
+        return Run.ofMiles(START.plusDays(rnd.nextInt(DAYS)), 1 + rnd.nextInt(2_000) / 100.0, 600 + rnd.nextInt(10_000));
+    }
+
+    private static void compare(String step, RunService service, Random rnd) {
+        check(step, service, LocalDate.MIN, LocalDate.MAX);
+        check(step, service, START.plusDays(10), START.plusDays(9)); // empty
+        for (int i = 0; i < 40; i++) {
+            LocalDate a = START.plusDays(rnd.nextInt(DAYS + 60) - 30);
+            LocalDate b = a.plusDays(rnd.nextInt(800));
+            check(step, service, a, b);
+            check(step, service, a.with(TemporalAdjusters.previousOrSame(DayOfWeek.SUNDAY)),
+                    b.with(TemporalAdjusters.nextOrSame(DayOfWeek.SATURDAY)));
+            check(step, service, a.withDayOfMonth(1), b.with(TemporalAdjusters.lastDayOfMonth()));
+            check(step, service, a.withDayOfYear(1), b.with(TemporalAdjusters.lastDayOfYear()));
+            check(step, service, LocalDate.MIN, a);
+            check(step, service, a, LocalDate.MAX);
+        }
+    }
+
+    private static void check(String step, RunService service, LocalDate from, LocalDate to) {
+        checked++;
+        RunRollups.Totals t = service.getTotals(from, to);
+        RunService.RunStats s = service.getStats(from, to);
+        long[] duration = new long[1];
+        service.forEachRun(from, to, (day, miles, seconds) -> duration[0] += seconds);
+
+        boolean ok = t.runs() == s.totalRuns()
+                && close(t.totalMiles(), s.totalMiles())
+                && t.maxMiles() == s.highestDay()
+                && t.durationSeconds() == duration[0];
+        if (!ok && failures++ < 10) {
+            System.out.println("MISMATCH " + step + " [" + from + ", " + to + "]: rollups " + t
+                    + ", index " + s + ", scanned duration " + duration[0]);
+        }
+    }
+
+    private static boolean close(double a, double b) {
+        return Math.abs(a - b) <= 1e-6 * Math.max(1.0, Math.abs(b));
+    }
+}
@@ -0,0 +1,124 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic checks that live views stay exact under every overflow policy. The
+ * publisher's drains run on a queue this harness empties by hand, with a queue
+ * capacity of 1 or 2, so drops land exactly where a scenario puts them: at the tail
+ * of the stream with nothing after them, in the middle of a burst, and across a
+ * random mix of adds, updates and deletes. After each drain every view is compared
+ * with the service's own queries. Exits non-zero if any check fails.
+ *
+ * <pre>
+ *   java -cp out RunViewCheck [--seed=N]
+ * </pre>
+ */
+public class RunViewCheck {
+
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        long seed = 42;
+        for (String a : args) {
+            if (a.startsWith("--seed=")) seed = Long.parseLong(a.substring(7));
+            else throw new IllegalArgumentException("Unknown option " + a);
+        }
+        for (RunEventPublisher.Overflow policy : RunEventPublisher.Overflow.values()) {
+            check("tail drop, " + policy, policy, 1, new Random(seed), RunViewCheck::tailDrop);
+            check("burst then more, " + policy, policy, 1, new Random(seed), RunViewCheck::burstThenMore);
+            check("random edits, " + policy, policy, 2, new Random(seed), RunViewCheck::randomEdits);
+        }
+        System.out.println(failures == 0 ? "all checks passed" : failures + " check(s) FAILED");
+        if (failures > 0) System.exit(1);
+    }
+
+    interface Scenario {
+        void run(Fixture f, Random rnd);
+    }
+
+    private static void check(String name, RunEventPublisher.Overflow policy, int capacity, Random rnd,
+                              Scenario s) throws Exception {
+        Path dir = Files.createTempDirectory("runviews");
+        Fixture f = new Fixture(dir, policy, capacity);
+        try {
+            s.run(f, rnd);
+            f.verify();
+            System.out.printf("PASS  %-32s reseeds %d, dropped %d%n", name, f.weekly.reseeds(), f.events.metrics().dropped());
+        } catch (AssertionError | RuntimeException e) {
+            failures++;
+            System.out.println("FAIL  " + name + ": " + e.getMessage());
+        } finally {
+            f.service.close();
+            ConcurrencyStress.deleteTree(dir);
+        }
+    }
+
+    // three adds into a queue of one: the last two are the ones a drop-newest queue loses
+    private static void tailDrop(Fixture f, Random rnd) {
+        LocalDate today = LocalDate.now(EventPipelineBench.CLOCK);
+        for (int i = 0; i < 3; i++) f.service.addRun(Run.ofMiles(today, 5.0, 2_400));
+        f.drain();
+    }
+
+    private static void burstThenMore(Fixture f, Random rnd) {
+        LocalDate today = LocalDate.now(EventPipelineBench.CLOCK);
+        for (int i = 0; i < 10; i++) f.service.addRun(EventPipelineBench.randomRun(rnd, today));
+        f.drain();
+        f.verify();
+        f.service.addRun(EventPipelineBench.randomRun(rnd, today));
+        f.drain();
+    }
+
+    private static void randomEdits(Fixture f, Random rnd) {
+        LocalDate today = LocalDate.now(EventPipelineBench.CLOCK);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            int op = rnd.nextInt(10);
+            if (op < 6 || ids.isEmpty()) {
+                ids.add(f.service.addRun(EventPipelineBench.randomRun(rnd, today)).getId());
+            } else if (op < 8) {
+                f.service.updateRun(ids.get(rnd.nextInt(ids.size())), EventPipelineBench.randomRun(rnd, today));
+            } else {
+                f.service.deleteRun(ids.remove(rnd.nextInt(ids.size())));
+            }
+            if (rnd.nextInt(7) == 0) {
+                f.drain();
+                f.verify();
+            }
+        }
+        f.drain();
+    }
+
+    private static final class Fixture {
+        final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        final RunEventPublisher events;
+        final RunService service;
+        final WeeklyProgressView weekly;
+        final StreakView streaks;
+        final PersonalBestView bests;
+
+        Fixture(Path dir, RunEventPublisher.Overflow policy, int capacity) {
+            events  = new RunEventPublisher(tasks::add, capacity, policy);
+            service = new RunService(new RunRepository(dir.resolve("runs.csv").toString()), null,
+                    EventPipelineBench.CLOCK, events);
+            weekly  = service.attach(new WeeklyProgressView(EventPipelineBench.CLOCK));
+            streaks = service.attach(new StreakView(EventPipelineBench.CLOCK));
+            bests   = service.attach(new PersonalBestView(pb -> { }));
+        }
+
+        // runs every scheduled drain, including those scheduled by drains
+        void drain() {
+            for (Runnable t; (t = tasks.poll()) != null; ) t.run();
+        }
+
+        void verify() {
+            String result = EventPipelineBench.check(service, weekly, streaks, bests);
+            if (!result.equals("ok")) throw new AssertionError(result);
+        }
+    }
+}
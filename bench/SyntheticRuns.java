@@ -0,0 +1,24 @@
+import java.time.LocalDate;
+import java.util.Random;
+
+/** Reproducible run histories for the benchmarks and load harnesses. */
+public final class SyntheticRuns {
+
+    private SyntheticRuns() {}
+
+    // evenly spread over ~20 years ending today, so the fixed windows hit real data
+    static RunTable history(int n, long seed) {
+        Random rnd = new Random(seed);
+        int lastDay  = (int) LocalDate.now().toEpochDay();
+        int spanDays = 20 * 365;
+        RunTable table = new RunTable(n);
+        Run.InputType[] types = Run.InputType.values();
+        for (int i = 0; i < n; i++) {
+            int day = lastDay - spanDays + (int) ((long) i * spanDays / n);
+            double miles = Math.round((1.0 + rnd.nextDouble() * 14.0) * 10_000.0) / 10_000.0;
+            long duration = rnd.nextInt(10) == 0 ? 0 : (long) (miles * (420 + rnd.nextInt(300)));
+            table.add(day, miles, duration, types[rnd.nextInt(types.length)]);
+        }
+        return table;
+    }
+}
@@ -0,0 +1,393 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Fault-injection checks for {@link WalRunRepository}: simulated crashes (no close or
+ * checkpoint), torn log tails at every byte, flipped bits, a clobbered log header,
+ * a crash between the snapshot rename and the log reset, a snapshot write that
+ * fails part way, torn update and delete records, and a compaction that runs while
+ * group-committed adds are still queued, and a --convert of a history whose log was never
+ * compacted. Each scenario reopens the files the way a restart would and checks
+ * exactly the acknowledged runs come back. Exits non-zero if any scenario fails.
+ *
+ * <pre>
+ *   java -cp out WalFaultInjection [--seed=N]
+ * </pre>
+ */
+public class WalFaultInjection {
+
+    private static final int RECORD = WalRunRepository.RECORD_HEADER_BYTES + BinaryRunFile.RUN_BYTES; // id-less add
+    private static final int ADD_ID = WalRunRepository.RECORD_HEADER_BYTES + WalRunRepository.ADD_BYTES;
+    private static final int TOMBSTONE = WalRunRepository.RECORD_HEADER_BYTES + 8;
+
+    private static int failures;
+    private static Random rnd;
+
+    public static void main(String[] args) throws Exception {
+        long seed = 42;
+        for (String a : args) {
+            if (a.startsWith("--seed=")) seed = Long.parseLong(a.substring(7));
+            else throw new IllegalArgumentException("Unknown option " + a);
+        }
+        rnd = new Random(seed);
+
+        scenario("crash after appends replays the log", WalFaultInjection::crashAfterAppends);
+        scenario("torn tail at every byte of the last record", WalFaultInjection::tornTail);
+        scenario("flipped bit stops replay at that record", WalFaultInjection::bitFlip);
+        scenario("clobbered log header keeps the snapshot", WalFaultInjection::badHeader);
+        scenario("crash between snapshot rename and log reset", WalFaultInjection::staleLog);
+        scenario("failed snapshot write keeps old snapshot and log", WalFaultInjection::failedSnapshot);
+        scenario("compaction bounds what a restart replays", WalFaultInjection::boundedReplay);
+        scenario("checkpoint on close leaves nothing to replay", WalFaultInjection::cleanShutdown);
+        scenario("edits replay; a torn edit is dropped alone", WalFaultInjection::tornEdits);
+        scenario("tombstones past the garbage ratio trigger compaction", WalFaultInjection::garbageCompaction);
+        scenario("compaction waits for queued group-commit adds", WalFaultInjection::compactionWithQueuedAdds);
+        scenario("a logged add already in the snapshot replays once", WalFaultInjection::addAlreadyInSnapshot);
+        scenario("converting to .bin keeps runs still in the log", WalFaultInjection::convertWithLog);
+
+        System.out.println(failures == 0 ? "all scenarios passed" : failures + " scenario(s) FAILED");
+        if (failures > 0) System.exit(1);
+    }
+
+    interface Scenario {
+        void run(Path dir) throws Exception;
+    }
+
+    private static void scenario(String name, Scenario s) throws IOException {
+        Path dir = Files.createTempDirectory("walfault");
+        try {
+            s.run(dir);
+            System.out.println("PASS  " + name);
+        } catch (AssertionError | Exception e) {
+            failures++;
+            System.out.println("FAIL  " + name + ": " + e.getMessage());
+        } finally {
+            ConcurrencyStress.deleteTree(dir);
+        }
+    }
+
+    private static void crashAfterAppends(Path dir) throws IOException {
+        String file = dir.resolve("runs.csv").toString();
+        List<Run> written = appendBatches(file, 1_000);
+        check(reload(file), written);
+    }
+
+    private static void tornTail(Path dir) throws IOException {
+        String file = dir.resolve("runs.csv").toString();
+        List<Run> written = appendBatches(file, 50);
+        Path wal = Path.of(file + ".wal");
+        byte[] full = Files.readAllBytes(wal);
+
+        for (int cut = 1; cut < RECORD; cut++) {
+            Files.write(wal, java.util.Arrays.copyOf(full, full.length - cut));
+            check(reload(file), written.subList(0, written.size() - 1));
+
+            // the torn bytes must be cut off, not left in front of the next record
+            WalRunRepository repo = new WalRunRepository(file, false, 0);
+            repo.loadTable();
+            Run extra = run(rnd);
+            repo.appendBatch(List.of(extra));
+            repo.close();
+            List<Run> expected = new ArrayList<>(written.subList(0, written.size() - 1));
+            expected.add(extra);
+            check(reload(file), expected);
+        }
+    }
+
+    private static void bitFlip(Path dir) throws IOException {
+        String file = dir.resolve("runs.csv").toString();
+        List<Run> written = appendBatches(file, 200);
+        Path wal = Path.of(file + ".wal");
+        byte[] clean = Files.readAllBytes(wal);
+
+        for (int trial = 0; trial < 200; trial++) {
+            int record = rnd.nextInt(written.size());
+            int offset = WalRunRepository.HEADER_BYTES + record * RECORD + rnd.nextInt(RECORD);
+            byte[] bad = clean.clone();
+            bad[offset] ^= (byte) (1 << rnd.nextInt(8));
+            Files.write(wal, bad);
+            check(reload(file), written.subList(0, record));
+        }
+    }
+
+    private static void badHeader(Path dir) throws IOException {
+        String file = dir.resolve("runs.csv").toString();
+        List<Run> snapshot = appendBatches(file, 100);
+        WalRunRepository repo = new WalRunRepository(file, false, 0);
+        repo.save(repo.loadTable());
+        repo.appendBatch(List.of(run(rnd)));
+        repo.close();
+
+        Path wal = Path.of(file + ".wal");
+        try (FileChannel ch = FileChannel.open(wal, StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.wrap(new byte[] {'j', 'u', 'n', 'k'}), 0);
+        }
+        check(reload(file), snapshot);
+        if (!Files.exists(Path.of(file + ".wal.corrupt"))) throw new AssertionError("bad log was not kept aside");
+    }
+
+    private static void staleLog(Path dir) throws IOException {
+        String file = dir.resolve("runs.csv").toString();
+        List<Run> written = appendBatches(file, 300);
+        Path wal = Path.of(file + ".wal");
+        byte[] before = Files.readAllBytes(wal);
+
+        WalRunRepository repo = new WalRunRepository(file, false, 0);
+        repo.save(repo.loadTable());
+        repo.close();
+        Files.write(wal, before); // as if the process died right after the snapshot rename
+        check(reload(file), written);
+    }
+
+    private static void failedSnapshot(Path dir) throws IOException {
+        String file = dir.resolve("runs.csv").toString();
+        WalRunRepository repo = new WalRunRepository(file, false, 0);
+        repo.loadTable();
+        List<Run> first = batch(100);
+        repo.appendBatch(first);
+        repo.save(repo.loadTable());
+        List<Run> second = batch(100);
+        repo.appendBatch(second);
+
+        // a directory where the temp file goes makes the write fail, like a full disk would
+        Path tmp = Path.of(file + ".tmp");
+        Files.createDirectory(tmp);
+        System.err.println("(expected error follows)");
+        repo.save(repo.loadTable());
+        Files.deleteIfExists(tmp);
+
+        List<Run> third = batch(10);
+        repo.appendBatch(third);
+        repo.close();
+
+        List<Run> expected = new ArrayList<>(first);
+        expected.addAll(second);
+        expected.addAll(third);
+        check(reload(file), expected);
+    }
+
+    private static void boundedReplay(Path dir) throws IOException {
+        String file = dir.resolve("runs.csv").toString();
+        int compactEvery = 100;
+        RunService service = new RunService(new WalRunRepository(file, false, compactEvery));
+        List<Run> written = new ArrayList<>();
+        for (int i = 0; i < 1_050; i++) {
+            Run r = run(rnd);
+            service.addRun(r);
+            written.add(r);
+        }
+        // no close: a crash
+        long logBytes = Files.size(Path.of(file + ".wal"));
+        if (logBytes > WalRunRepository.HEADER_BYTES + (long) compactEvery * ADD_ID) {
+            throw new AssertionError("log holds " + logBytes + " bytes after compaction");
+        }
+        check(reload(file), written);
+    }
+
+    private static void cleanShutdown(Path dir) throws IOException {
+        String file = dir.resolve("runs.csv").toString();
+        RunService service = new RunService(new WalRunRepository(file, false, 0));
+        List<Run> written = batch(500);
+        service.addRuns(written);
+        service.close();
+        if (Files.size(Path.of(file + ".wal")) != WalRunRepository.HEADER_BYTES) {
+            throw new AssertionError("log not empty after close");
+        }
+        check(new RunRepository(file).loadTable(), written); // the plain CSV has everything
+    }
+
+    private static void tornEdits(Path dir) throws IOException {
+        String file = dir.resolve("runs.csv").toString();
+        RunService service = new RunService(new WalRunRepository(file, false, 0, Double.MAX_VALUE));
+        List<Run> stored = service.addRuns(batch(200));
+        List<Run> expected = new ArrayList<>(stored);
+        for (int i = 0; i < 50; i++) {
+            int k = rnd.nextInt(expected.size());
+            long id = expected.get(k).getId();
+            if (rnd.nextBoolean()) {
+                service.deleteRun(id);
+                expected.remove(k);
+            } else {
+                Run r = run(rnd);
+                service.updateRun(id, r);
+                expected.set(k, r.withId(id));
+            }
+        }
+        // no close: a crash
+        check(reload(file), expected);
+
+        // one more edit, torn at every byte: everything before it still comes back
+        Path wal = Path.of(file + ".wal");
+        byte[] before = Files.readAllBytes(wal);
+        service.deleteRun(expected.get(0).getId());
+        byte[] after = Files.readAllBytes(wal);
+        for (int len = before.length; len < after.length; len++) {
+            Files.write(wal, java.util.Arrays.copyOf(after, len));
+            check(reload(file), expected);
+        }
+    }
+
+    private static void garbageCompaction(Path dir) throws IOException {
+        String file = dir.resolve("runs.csv").toString();
+        RunService service = new RunService(new WalRunRepository(file, false, 0, 0.25));
+        List<Run> stored = service.addRuns(batch(400));
+        long logBytes = 0;
+        for (int i = 0; i < 101; i++) {
+            service.deleteRun(stored.get(i).getId());
+            logBytes = Math.max(logBytes, Files.size(Path.of(file + ".wal")));
+        }
+        // the 81st tombstone passes 0.25 of the 319 live runs and folds the log into the snapshot
+        if (logBytes > WalRunRepository.HEADER_BYTES + 400L * ADD_ID + 80L * TOMBSTONE) {
+            throw new AssertionError("log not compacted past the garbage ratio");
+        }
+        if (Files.size(Path.of(file + ".wal")) != WalRunRepository.HEADER_BYTES + 20L * TOMBSTONE) {
+            throw new AssertionError("log holds " + Files.size(Path.of(file + ".wal")) + " bytes after compaction");
+        }
+        check(reload(file), stored.subList(101, stored.size()));
+    }
+
+    private static void compactionWithQueuedAdds(Path dir) throws Exception {
+        // the plain CSV has no replay to drop a second copy, so it shows the service's part alone
+        for (boolean wal : new boolean[] {true, false}) {
+            String file = dir.resolve(wal ? "runs.csv" : "plain.csv").toString();
+            RunService service = new RunService(slowAppends(file, wal), new BatchingRunWriter(1, 0, 1_024));
+            for (int round = 0; round < 20; round++) {
+                List<Run> written = new ArrayList<>(service.getAllRuns());
+                List<java.util.concurrent.CompletableFuture<Void>> pending = new ArrayList<>();
+                for (int i = 0; i < 3; i++) {
+                    Run r = run(rnd);
+                    pending.add(service.addRunsAsync(List.of(r)));
+                    written.add(r);
+                }
+                for (var f : pending) f.join();
+                // no close: a crash
+                check(wal ? reload(file) : new RunRepository(file).loadTable(), written);
+            }
+        }
+    }
+
+    // compacting every 2 records, with a slow fsync that keeps later submissions queued meanwhile
+    private static RunRepository slowAppends(String file, boolean wal) {
+        return wal ? new WalRunRepository(file, false, 2) {
+            @Override
+            public void appendBatch(List<Run> runs) throws IOException {
+                pause();
+                super.appendBatch(runs);
+            }
+        } : new RunRepository(file, false, 2) {
+            @Override
+            public void appendBatch(List<Run> runs) throws IOException {
+                pause();
+                super.appendBatch(runs);
+            }
+        };
+    }
+
+    private static void pause() {
+        try {
+            Thread.sleep(5);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void addAlreadyInSnapshot(Path dir) throws IOException {
+        String file = dir.resolve("runs.csv").toString();
+        WalRunRepository repo = new WalRunRepository(file, false, 0);
+        RunIndex index = new RunIndex(repo.loadTable());
+        List<Run> stored = index.addAll(batch(3));
+        repo.save(index.table());
+        repo.appendBatch(stored.subList(1, 3)); // appends that were queued when the snapshot was taken
+        Run later = index.add(run(rnd));
+        repo.appendBatch(List.of(later));
+        repo.close();
+
+        List<Run> expected = new ArrayList<>(stored);
+        expected.add(later);
+        RunTable loaded = reload(file);
+        check(loaded, expected);
+        for (int i = 0; i < loaded.size(); i++) {
+            if (loaded.id(i) != loaded.get(i).getId()) throw new AssertionError("id mismatch");
+        }
+    }
+
+    private static void convertWithLog(Path dir) throws IOException {
+        String file = dir.resolve("runs.csv").toString();
+        WalRunRepository repo = new WalRunRepository(file, false, 0);
+        RunIndex index = new RunIndex(repo.loadTable());
+        List<Run> written = new ArrayList<>(index.addAll(batch(4)));
+        repo.save(index.table());
+        List<Run> logged = index.addAll(batch(5));
+        repo.appendBatch(logged); // no close: these are only in runs.csv.wal
+        written.addAll(logged);
+
+        Path bin = dir.resolve("runs.bin");
+        int n = BinaryRunFile.convert(Path.of(file), bin);
+        if (n != written.size()) throw new AssertionError("converted " + n + " of " + written.size());
+        RunTable converted = new BinaryRunRepository(bin.toString()).loadTable();
+        check(converted, written);
+        for (Run r : written) {
+            int i = 0;
+            while (i < converted.size() && converted.id(i) != r.getId()) i++;
+            if (i == converted.size() || !key(converted.get(i)).equals(key(r))) {
+                throw new AssertionError("run " + r.getId() + " lost its id");
+            }
+        }
+    }
+
+    // batches of 1-10 runs, each acknowledged before the next; no close, as if the process died
+    private static List<Run> appendBatches(String file, int n) throws IOException {
+        WalRunRepository repo = new WalRunRepository(file, false, 0);
+        repo.loadTable();
+        List<Run> written = new ArrayList<>();
+        while (written.size() < n) {
+            List<Run> b = batch(Math.min(n - written.size(), 1 + rnd.nextInt(10)));
+            repo.appendBatch(b);
+            written.addAll(b);
+        }
+        return written;
+    }
+
+    private static RunTable reload(String file) {
+        return new WalRunRepository(file, false, 0).loadTable();
+    }
+
+    private static List<Run> batch(int n) {
+        List<Run> runs = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) runs.add(run(rnd));
+        return runs;
+    }
+
+    // 4-decimal miles, so the CSV snapshot round-trips exactly
+    private static Run run(Random r) {
+        LocalDate date = LocalDate.of(2020, 1, 1).plusDays(r.nextInt(2_000));
+        double miles = Math.round((0.5 + r.nextDouble() * 20) * 10_000.0) / 10_000.0;
+        return Run.ofMiles(date, miles, 300 + r.nextInt(10_000));
+    }
+
+    // same runs in any order (the log keeps append order, snapshots keep index order)
+    private static void check(RunTable actual, List<Run> expected) {
+        if (actual.size() != expected.size()) {
+            throw new AssertionError("expected " + expected.size() + " runs, recovered " + actual.size());
+        }
+        List<String> a = new ArrayList<>(), e = new ArrayList<>();
+        for (int i = 0; i < actual.size(); i++) a.add(key(actual.get(i)));
+        for (Run r : expected) e.add(key(r));
+        a.sort(null);
+        e.sort(null);
+        if (!a.equals(e)) throw new AssertionError("recovered runs differ from the acknowledged ones");
+    }
+
+    private static String key(Run r) {
+        return r.getDate() + "," + String.format("%.4f", r.getDistanceMiles()) + "," + r.getDurationSeconds()
+                + "," + r.getInputType();
+    }
+}
@@ -0,0 +1,109 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+import runtracker.jmh.Workloads;
+
+/**
+ * The app side of {@link Workloads}: a temp directory holding a synthetic runs.csv.
+ * The service opens it through the write-ahead log, as Main does, with one extra run
+ * dated last week that {@code editRun} rewrites.
+ */
+public final class AppWorkloads {
+
+    private static final DateTimeFormatter DATE_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    private AppWorkloads() {}
+
+    public static Workloads.Repository openRepository(int runs) throws IOException {
+        Path dir = Files.createTempDirectory("runjmh");
+        Path csv = dir.resolve("runs.csv");
+        RunTable data = SyntheticRuns.history(runs, 42);
+        new RunRepository(csv.toString(), false, 0).save(data);
+        RunRepository saves = new RunRepository(dir.resolve("save.csv").toString(), false, 0);
+
+        return new Workloads.Repository() {
+            @Override public Object load()       { return new RunRepository(csv.toString()).loadTable(); }
+            @Override public Object legacyLoad() throws IOException { return legacySplitLoad(csv); }
+
+            @Override public Object save() {
+                saves.save(data);
+                return data;
+            }
+
+            @Override public void close() throws IOException { ConcurrencyStress.deleteTree(dir); }
+        };
+    }
+
+    public static Workloads.Service openService(int runs) throws IOException {
+        Path dir = Files.createTempDirectory("runjmh");
+        Path csv = dir.resolve("runs.csv");
+        new RunRepository(csv.toString(), false, 0).save(SyntheticRuns.history(runs, 42));
+        RunService service = new RunService(new WalRunRepository(csv.toString(), false, 0));
+        TextRenderer screen = new TextRenderer();
+        LocalDate today = LocalDate.now();
+        LocalDate lastWeek = service.getWeekStart().minusDays(1);
+        long edited = service.addRun(Run.ofMiles(lastWeek, 5.0, 2_400)).getId();
+
+        return new Workloads.Service() {
+            private boolean longer;
+
+            @Override public Object stats(int days)      { return service.getStats(today.minusDays(days), today); }
+            @Override public Object paceMedian(int days) { return service.getPacePercentile(today.minusDays(days), today, 0.5); }
+            @Override public Object distanceP90()        { return service.getDistancePercentile(LocalDate.MIN, today, 0.9); }
+            @Override public Object allTime()            { return service.getAllTime(); }
+            @Override public Object nextRunGoal()        { return service.getNextRunGoalMiles(); }
+            @Override public Object weeklyGoal()         { return service.getNextWeeklyGoalMiles(); }
+            @Override public Object weeklyBreakdown()    { return service.getWeeklyGoalBreakdown(0); }
+
+            // an update to a run from last week drops every goal and the windows
+            @Override public void editRun() {
+                longer = !longer;
+                service.updateRun(edited, Run.ofMiles(lastWeek, longer ? 5.5 : 5.0, 2_400));
+            }
+
+            // Main.showHistory without the console: the newest 25 runs, rendered and encoded
+            @Override public Object history() throws IOException {
+                Main.writeHistory(service, screen, OutputStream.nullOutputStream(), 25);
+                return screen;
+            }
+
+            // the whole history, as an export writes it
+            @Override public Object fullHistory() throws IOException {
+                Main.writeHistory(service, screen, OutputStream.nullOutputStream(), Integer.MAX_VALUE);
+                return screen;
+            }
+
+            @Override public void close() throws IOException {
+                service.close();
+                ConcurrencyStress.deleteTree(dir);
+            }
+        };
+    }
+
+    // the String.split loader RunRepository used before RunCsvParser, kept as a baseline
+    static List<Run> legacySplitLoad(Path csv) throws IOException {
+        List<Run> runs = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(csv.toFile()))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) continue;
+                String[] parts = line.split(",");
+                if (parts.length < 4) continue;
+                LocalDate date = LocalDate.parse(parts[0].trim(), DATE_FMT);
+                double distanceMiles = Double.parseDouble(parts[1].trim());
+                long duration = Long.parseLong(parts[2].trim());
+                Run.InputType.valueOf(parts[3].trim());
+                runs.add(Run.ofMiles(date, distanceMiles, duration));
+            }
+        }
+        return runs;
+    }
+}
@@ -0,0 +1,50 @@
+package runtracker.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Whole-file load and save of runs.csv, with the line/split loader RunCsvParser
+ * replaced as a baseline. The 10M-run file is about 300 MB, a load there takes
+ * seconds and the legacy one allocates over 10 GB, hence the larger heap; narrow a
+ * quick run with {@code -p runs=1000,100000}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RunRepositoryBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int runs;
+
+    private Workloads.Repository repo;
+
+    @Setup(Level.Trial)
+    public void open() throws Exception {
+        repo = Workloads.open(Workloads.Repository.class, runs);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws Exception {
+        repo.close();
+    }
+
+    @Benchmark
+    public Object load() throws Exception {
+        return repo.load();
+    }
+
+    @Benchmark
+    public Object legacyLoad() throws Exception {
+        return repo.legacyLoad();
+    }
+
+    @Benchmark
+    public Object save() throws Exception {
+        return repo.save();
+    }
+}
@@ -0,0 +1,107 @@
+package runtracker.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Read paths of RunService over a loaded history. Goals and the stats-screen windows
+ * are cached, so the {@code AfterEdit} benchmarks update a run from last week before
+ * every call to force the recompute; getAllTime and getNextRunGoalMiles are also
+ * measured as plain cache hits. The edit is
+ * left out of those timings, but the GC profiler's B/op still counts what it allocates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RunServiceBenchmark {
+
+    @Param({"1000", "100000", "1000000"}) // -p runs=10000000 for the largest history
+    public int runs;
+
+    private Workloads.Service service;
+
+    // only getStats is measured per window
+    @State(Scope.Benchmark)
+    public static class Window {
+        @Param({"7", "30", "365", "3650"})
+        public int days;
+    }
+
+    // invocation-level setup; only worth its overhead for the goal and window misses
+    @State(Scope.Thread)
+    public static class Edited {
+        @Setup(Level.Invocation)
+        public void edit(RunServiceBenchmark b) {
+            b.service.editRun();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void open() throws Exception {
+        service = Workloads.open(Workloads.Service.class, runs);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws Exception {
+        service.close();
+    }
+
+    @Benchmark
+    public Object getStats(Window window) {
+        return service.stats(window.days);
+    }
+
+    @Benchmark
+    public Object getPacePercentile365d() {
+        return service.paceMedian(365);
+    }
+
+    @Benchmark
+    public Object getDistancePercentileAllTime() {
+        return service.distanceP90();
+    }
+
+    @Benchmark
+    public Object getAllTime() {
+        return service.allTime();
+    }
+
+    @Benchmark
+    public Object getAllTimeAfterEdit(Edited edited) {
+        return service.allTime();
+    }
+
+    @Benchmark
+    public Object getNextRunGoalMiles() {
+        return service.nextRunGoal();
+    }
+
+    @Benchmark
+    public Object getNextRunGoalMilesAfterEdit(Edited edited) {
+        return service.nextRunGoal();
+    }
+
+    @Benchmark
+    public Object getNextWeeklyGoalMilesAfterEdit(Edited edited) {
+        return service.weeklyGoal();
+    }
+
+    @Benchmark
+    public Object getWeeklyGoalBreakdownAfterEdit(Edited edited) {
+        return service.weeklyBreakdown();
+    }
+
+    @Benchmark
+    public Object showHistory() throws Exception {
+        return service.history();
+    }
+
+    @Benchmark
+    public Object writeHistoryAll() throws Exception {
+        return service.fullHistory();
+    }
+}
@@ -0,0 +1,36 @@
+package runtracker.jmh;
+
+/**
+ * What the benchmarks call. JMH won't generate code for default-package classes and
+ * packaged code can't name them, so the app is reached through these interfaces,
+ * implemented by the default-package {@code AppWorkloads} and looked up once per trial.
+ */
+public final class Workloads {
+
+    public interface Repository extends AutoCloseable {
+        Object load() throws Exception;
+        Object legacyLoad() throws Exception;
+        Object save() throws Exception;
+    }
+
+    public interface Service extends AutoCloseable {
+        Object stats(int days);
+        Object paceMedian(int days);
+        Object distanceP90();
+        Object allTime();
+        Object nextRunGoal();
+        Object weeklyGoal();
+        Object weeklyBreakdown();
+        Object history() throws Exception;
+        Object fullHistory() throws Exception;
+        void editRun(); // so the next read misses the goal cache and the rolling windows
+    }
+
+    private Workloads() {}
+
+    // a synthetic history of this many runs, as SyntheticRuns generates it
+    public static <T> T open(Class<T> type, int runs) throws ReflectiveOperationException {
+        Object w = Class.forName("AppWorkloads").getMethod("open" + type.getSimpleName(), int.class).invoke(null, runs);
+        return type.cast(w);
+    }
+}
@@ -0,0 +1,92 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Runs for many athletes, one {@link RunService} (and one run file) per athlete ID
+ * under a data directory. Athletes are opened lazily on first use. Each athlete has
+ * its own lock, so writers for different athletes never contend and a writer only
+ * ever races readers of the same athlete. With a {@link BatchingRunWriter}, appends
+ * from every athlete are group-committed by its single writer thread.
+ */
+public class AthleteRunService implements Closeable {
+
+    private static final Pattern ATHLETE_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    private static final String FILE_SUFFIX = ".csv";
+
+    private final Path dataDir;
+    private final boolean fsync;
+    private final BatchingRunWriter writer;
+    private final ConcurrentHashMap<String, RunService> athletes = new ConcurrentHashMap<>();
+
+    public AthleteRunService(Path dataDir) throws IOException {
+        this(dataDir, false, null);
+    }
+
+    /**
+     * @param fsync  force appends to disk before acknowledging them
+     * @param writer shared group-commit writer, or null to append on the calling thread;
+     *               closed along with this service
+     */
+    public AthleteRunService(Path dataDir, boolean fsync, BatchingRunWriter writer) throws IOException {
+        this.dataDir = Files.createDirectories(dataDir);
+        this.fsync   = fsync;
+        this.writer  = writer;
+    }
+
+    public RunService forAthlete(String athleteId) {
+        if (!ATHLETE_ID.matcher(athleteId).matches()) {
+            throw new IllegalArgumentException("Invalid athlete id: " + athleteId);
+        }
+        return athletes.computeIfAbsent(athleteId,
+                id -> new RunService(new WalRunRepository(dataDir.resolve(id + FILE_SUFFIX).toString(), fsync,
+                        RunRepository.DEFAULT_COMPACT_EVERY),
+                        writer));
+    }
+
+    public void addRun(String athleteId, Run run) {
+        forAthlete(athleteId).addRun(run);
+    }
+
+    public void addRuns(String athleteId, List<Run> batch) {
+        forAthlete(athleteId).addRuns(batch);
+    }
+
+    public RunService.RunStats getStats(String athleteId, LocalDate from, LocalDate to) {
+        return forAthlete(athleteId).getStats(from, to);
+    }
+
+    // every athlete with a run file on disk or opened this session
+    public Set<String> athleteIds() {
+        Set<String> ids = new TreeSet<>(athletes.keySet());
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dataDir, "*" + FILE_SUFFIX)) {
+            for (Path f : files) {
+                String name = f.getFileName().toString();
+                String id = name.substring(0, name.length() - FILE_SUFFIX.length());
+                if (ATHLETE_ID.matcher(id).matches()) ids.add(id);
+            }
+        } catch (IOException e) {
+            System.err.println("Error listing athletes: " + e.getMessage());
+        }
+        return ids;
+    }
+
+    public BatchingRunWriter.Metrics writerMetrics() {
+        return writer == null ? null : writer.metrics();
+    }
+
+    @Override
+    public void close() {
+        if (writer != null) writer.close();
+        athletes.values().forEach(RunService::close);
+        athletes.clear();
+    }
+}
@@ -0,0 +1,208 @@
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Group commit for run appends. Callers enqueue runs and get a future back; a single
+ * writer thread drains the queue into batches (up to {@code maxBatch} runs, waiting
+ * at most {@code linger} for stragglers) and commits each batch with one write and one
+ * fsync per target file, then completes every future in it. One writer can serve many
+ * repositories, so a multi-athlete server needs only one of these. Run edits go
+ * through the same queue, so they land in each file in submission order.
+ */
+public class BatchingRunWriter implements Closeable {
+
+    // exactly one of runs and edits is non-null
+    private record Pending(RunRepository target, List<Run> runs, List<RunEdit> edits, Runnable afterCommit,
+                           CompletableFuture<Void> done) {
+        int size() {
+            return runs != null ? runs.size() : edits.size();
+        }
+    }
+
+    public record Metrics(long batches, long runsCommitted, double avgBatchSize, long maxBatchSize,
+                          int queueDepth, double avgCommitMillis, double maxCommitMillis) {}
+
+    private final int maxBatch;
+    private final long lingerNanos;
+    private final BlockingQueue<Pending> queue;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    private final LongAdder batches       = new LongAdder();
+    private final LongAdder runsCommitted = new LongAdder();
+    private final LongAdder commitNanos   = new LongAdder();
+    private final AtomicLong maxBatchSize   = new AtomicLong();
+    private final AtomicLong maxCommitNanos = new AtomicLong();
+
+    public BatchingRunWriter() {
+        this(1_024, 0, 65_536);
+    }
+
+    /**
+     * @param maxBatch      most runs committed together
+     * @param lingerMillis  how long a started batch waits for more runs (0 = commit what is queued)
+     * @param queueCapacity submissions beyond this block the caller
+     */
+    public BatchingRunWriter(int maxBatch, long lingerMillis, int queueCapacity) {
+        this.maxBatch    = Math.max(1, maxBatch);
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.queue       = new LinkedBlockingQueue<>(queueCapacity);
+        this.writer      = new Thread(this::writeLoop, "run-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public CompletableFuture<Void> submit(RunRepository target, List<Run> runs) {
+        return submit(target, runs, null);
+    }
+
+    /** {@code afterCommit} runs on the writer thread once this submission is durable. */
+    public CompletableFuture<Void> submit(RunRepository target, List<Run> runs, Runnable afterCommit) {
+        return enqueue(target, runs, null, afterCommit);
+    }
+
+    public CompletableFuture<Void> submitEdits(RunRepository target, List<RunEdit> edits, Runnable afterCommit) {
+        return enqueue(target, null, edits, afterCommit);
+    }
+
+    private CompletableFuture<Void> enqueue(RunRepository target, List<Run> runs, List<RunEdit> edits,
+                                            Runnable afterCommit) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        if (closed) {
+            done.completeExceptionally(new IllegalStateException("writer is closed"));
+            return done;
+        }
+        Pending p = new Pending(target, runs, edits, afterCommit, done);
+        try {
+            queue.put(p);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            done.completeExceptionally(e);
+            return done;
+        }
+        // close() may have landed between the check and the put, after the writer's last drain:
+        // if the writer hasn't taken it, nothing will, so take it back
+        if (closed && queue.remove(p)) {
+            done.completeExceptionally(new IllegalStateException("writer is closed"));
+        }
+        return done;
+    }
+
+    public Metrics metrics() {
+        long b = batches.sum(), r = runsCommitted.sum();
+        return new Metrics(b, r, b == 0 ? 0.0 : (double) r / b, maxBatchSize.get(), queue.size(),
+                b == 0 ? 0.0 : commitNanos.sum() / 1e6 / b, maxCommitNanos.get() / 1e6);
+    }
+
+    // commits everything already queued, then stops the writer thread
+    @Override
+    public void close() {
+        closed = true; // not interrupt(): that would close a FileChannel mid-write
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>();
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                int runs = first.size();
+
+                long lingerEnd = System.nanoTime() + lingerNanos;
+                while (runs < maxBatch) {
+                    Pending next = queue.poll();
+                    if (next == null) {
+                        long wait = lingerEnd - System.nanoTime();
+                        if (wait <= 0 || closed) break;
+                        next = queue.poll(wait, TimeUnit.NANOSECONDS);
+                        if (next == null) break;
+                    }
+                    batch.add(next);
+                    runs += next.size();
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (!batch.isEmpty()) commit(batch);
+            batch.clear();
+        }
+        // a submit that raced close() must not wait forever
+        for (Pending p; (p = queue.poll()) != null; ) {
+            p.done().completeExceptionally(new IllegalStateException("writer is closed"));
+        }
+    }
+
+    private void commit(List<Pending> batch) {
+        long start = System.nanoTime();
+
+        // group per target file, keeping submission order within each file
+        Map<RunRepository, List<Pending>> byTarget = new IdentityHashMap<>();
+        for (Pending p : batch) byTarget.computeIfAbsent(p.target(), t -> new ArrayList<>()).add(p);
+
+        int runs = 0;
+        for (Map.Entry<RunRepository, List<Pending>> e : byTarget.entrySet()) {
+            List<Pending> group = e.getValue();
+            // consecutive submissions of the same kind share one write
+            for (int from = 0, to; from < group.size(); from = to) {
+                boolean adds = group.get(from).runs() != null;
+                for (to = from + 1; to < group.size() && (group.get(to).runs() != null) == adds; to++) { }
+                runs += write(e.getKey(), group.subList(from, to), adds);
+            }
+        }
+
+        long nanos = System.nanoTime() - start;
+        batches.increment();
+        runsCommitted.add(runs);
+        commitNanos.add(nanos);
+        maxBatchSize.accumulateAndGet(runs, Math::max);
+        maxCommitNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    // returns how many runs or edits were written
+    private static int write(RunRepository target, List<Pending> group, boolean adds) {
+        int n = 0;
+        try {
+            if (adds) {
+                List<Run> all = new ArrayList<>();
+                for (Pending p : group) all.addAll(p.runs());
+                target.appendBatch(all);
+                n = all.size();
+            } else {
+                List<RunEdit> all = new ArrayList<>();
+                for (Pending p : group) all.addAll(p.edits());
+                target.appendEdits(all);
+                n = all.size();
+            }
+        } catch (Exception ex) {
+            System.err.println((adds ? "Error appending runs: " : "Error saving run edits: ") + ex.getMessage());
+            for (Pending p : group) p.done().completeExceptionally(ex);
+            return 0;
+        }
+        for (Pending p : group) {
+            if (p.afterCommit() != null) {
+                try {
+                    p.afterCommit().run();
+                } catch (RuntimeException ex) {
+                    System.err.println("Error after commit: " + ex.getMessage());
+                }
+            }
+            p.done().complete(null);
+        }
+        return n;
+    }
+}
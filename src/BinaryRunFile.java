@@ -0,0 +1,192 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Fixed-width binary run file. Loading maps it read-only and copies every record
+ * into a {@link RunTable} up front; queries run on that table, not on the mapping.
+ *
+ * <pre>
+ * header (16 bytes, little-endian)
+ *   int   magic        "RUNB"
+ *   short version
+ *   short recordBytes
+ *   int   count        records that are fully written
+ *   int   flags        bit 0: records are sorted by date
+ * record (32 bytes)
+ *   long   id
+ *   run fields (24 bytes)
+ *     long   durationSeconds
+ *     double distanceMiles
+ *     int    epochDay
+ *     byte   inputType (ordinal)
+ *     3 bytes padding
+ * </pre>
+ *
+ * Version 1 records are the run fields alone; they load with id 0, and the index
+ * numbers them in file order like CSV rows without an id. The copy is column by
+ * column: nothing is parsed and no {@link Run} is built.
+ */
+public class BinaryRunFile implements Closeable {
+
+    static final int   MAGIC        = 0x52554E42; // "RUNB"
+    static final short VERSION      = 2;
+    static final int   HEADER_BYTES = 16;
+    static final int   RUN_BYTES    = 24; // the run fields, also what the WAL logs
+    static final int   RECORD_BYTES = 8 + RUN_BYTES;
+    static final int   COUNT_OFFSET = 8;
+    static final int   FLAG_SORTED  = 1;
+
+    private static final Run.InputType[] TYPES = Run.InputType.values();
+
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final int count;
+    private final boolean sorted;
+    private final int recordBytes;
+    private final int idBytes; // 0 for version 1
+
+    private BinaryRunFile(FileChannel channel, MappedByteBuffer map, int count, boolean sorted, int recordBytes) {
+        this.channel     = channel;
+        this.map         = map;
+        this.count       = count;
+        this.sorted      = sorted;
+        this.recordBytes = recordBytes;
+        this.idBytes     = recordBytes - RUN_BYTES;
+    }
+
+    public static BinaryRunFile open(Path path) throws IOException {
+        FileChannel ch = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long length = ch.size();
+            if (length < HEADER_BYTES) throw new IOException("Not a run file (too short): " + path);
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (map.getInt(0) != MAGIC) throw new IOException("Not a run file (bad magic): " + path);
+            short version = map.getShort(4);
+            int recordBytes = version == VERSION ? RECORD_BYTES : version == 1 ? RUN_BYTES : -1;
+            if (recordBytes < 0)                 throw new IOException("Unsupported run file version " + version);
+            if (map.getShort(6) != recordBytes)  throw new IOException("Unexpected record size " + map.getShort(6));
+
+            int count = map.getInt(COUNT_OFFSET);
+            long maxCount = (length - HEADER_BYTES) / recordBytes;
+            if (count < 0 || count > maxCount) throw new IOException("Run file truncated: " + path);
+
+            return new BinaryRunFile(ch, map, count, (map.getInt(12) & FLAG_SORTED) != 0, recordBytes);
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    // writes next to the target, syncs it and moves it into place
+    public static void write(Path path, RunTable table) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ch.write(header(table.size(), isSorted(table)));
+
+            ByteBuffer buf = ByteBuffer.allocate(RECORD_BYTES * 4096).order(ByteOrder.LITTLE_ENDIAN);
+            RunTable.Cursor c = table.cursor();
+            while (c.next()) {
+                if (buf.remaining() < RECORD_BYTES) {
+                    buf.flip();
+                    while (buf.hasRemaining()) ch.write(buf);
+                    buf.clear();
+                }
+                putRecord(buf, c.id(), c.epochDay(), c.miles(), c.durationSeconds(), c.inputType());
+            }
+            buf.flip();
+            while (buf.hasRemaining()) ch.write(buf);
+            ch.force(true); // before the rename, or a crash can leave an empty file under the old name
+        }
+        RunRepository.replaceAtomically(tmp, path);
+    }
+
+    // one-shot migration from the text format, log included; returns the number of runs written
+    public static int convert(Path csv, Path bin) throws IOException {
+        WalRunRepository source = new WalRunRepository(csv.toString());
+        RunTable table;
+        try {
+            table = new RunIndex(source.loadTable()).table();
+        } finally {
+            source.close();
+        }
+        write(bin, table);
+        return table.size();
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isSorted() {
+        return sorted;
+    }
+
+    // false for version 1 files, whose runs are numbered on load
+    public boolean hasIds() {
+        return idBytes > 0;
+    }
+
+    public int epochDay(int i) {
+        return map.getInt(offset(i) + 16);
+    }
+
+    public long id(int i) {
+        return idBytes == 0 ? 0 : map.getLong(offset(i) - idBytes);
+    }
+
+    // bulk column copy, no per-run objects
+    public RunTable toTable() throws IOException {
+        RunTable table = new RunTable(count);
+        for (int i = 0; i < count; i++) {
+            int off = offset(i);
+            int type = map.get(off + 20);
+            if (type < 0 || type >= TYPES.length) throw new IOException("Bad input type at record " + i);
+            table.add(map.getInt(off + 16), map.getDouble(off + 8), map.getLong(off), TYPES[type], id(i));
+        }
+        return table;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    static ByteBuffer header(int count, boolean sorted) {
+        ByteBuffer h = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        h.putInt(MAGIC).putShort(VERSION).putShort((short) RECORD_BYTES)
+                .putInt(count).putInt(sorted ? FLAG_SORTED : 0);
+        return h.flip();
+    }
+
+    static void putRecord(ByteBuffer buf, long id, int epochDay, double miles, long durationSeconds,
+                          Run.InputType type) {
+        putRun(buf.putLong(id), epochDay, miles, durationSeconds, type);
+    }
+
+    static void putRun(ByteBuffer buf, int epochDay, double miles, long durationSeconds, Run.InputType type) {
+        buf.putLong(durationSeconds).putDouble(miles).putInt(epochDay)
+                .put((byte) type.ordinal()).put((byte) 0).putShort((short) 0);
+    }
+
+    private static boolean isSorted(RunTable table) {
+        for (int i = 1; i < table.size(); i++) {
+            if (table.epochDay(i) < table.epochDay(i - 1)) return false;
+        }
+        return true;
+    }
+
+    // where record i's run fields start
+    private int offset(int i) {
+        return HEADER_BYTES + i * recordBytes + idBytes;
+    }
+}
@@ -0,0 +1,170 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link RunRepository} over the {@link BinaryRunFile} format. Loading maps the file
+ * and copies columns straight into a {@link RunTable}; appends write fixed-width
+ * records in place and then bump the header count, so a torn append is simply
+ * ignored on the next load. Appends leave no garbage; edits are persisted by
+ * rewriting the file. A version 1 file, whose records have no id, is rewritten as
+ * the current version before the first append. {@code fsync} applies to appends;
+ * a rewrite is always synced before it replaces the file.
+ */
+public class BinaryRunRepository extends RunRepository {
+
+    private final Path path;
+    private final boolean fsync;
+
+    private FileChannel channel;
+    private int count;
+    private int flags;
+    private int lastEpochDay = Integer.MIN_VALUE;
+
+    public BinaryRunRepository(String filePath) {
+        this(filePath, false);
+    }
+
+    public BinaryRunRepository(String filePath, boolean fsync) {
+        super(filePath, fsync, 0);
+        this.path  = Path.of(filePath);
+        this.fsync = fsync;
+    }
+
+    @Override
+    public void appendBatch(List<Run> runs) throws IOException {
+        if (runs.isEmpty()) return;
+        FileChannel ch = openChannel();
+        ByteBuffer buf = ByteBuffer.allocate(runs.size() * BinaryRunFile.RECORD_BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (Run r : runs) {
+            int day = Math.toIntExact(r.getDate().toEpochDay());
+            if (day < lastEpochDay) flags &= ~BinaryRunFile.FLAG_SORTED;
+            lastEpochDay = Math.max(lastEpochDay, day);
+            BinaryRunFile.putRecord(buf, r.getId(), day, r.getDistanceMiles(), r.getDurationSeconds(), r.getInputType());
+        }
+        buf.flip();
+        long pos = BinaryRunFile.HEADER_BYTES + (long) count * BinaryRunFile.RECORD_BYTES;
+        while (buf.hasRemaining()) pos += ch.write(buf, pos);
+        if (fsync) ch.force(false);
+
+        count += runs.size();
+        ch.write(BinaryRunFile.header(count, (flags & BinaryRunFile.FLAG_SORTED) != 0), 0);
+        if (fsync) ch.force(false);
+        RunMetrics.bytesWritten((long) runs.size() * BinaryRunFile.RECORD_BYTES + BinaryRunFile.HEADER_BYTES);
+    }
+
+    // appends never accumulate garbage; only edits force a rewrite
+    @Override
+    public boolean needsCompaction() {
+        return rewritePending;
+    }
+
+    @Override
+    public void save(RunTable table) {
+        closeChannel();
+        long start = RunMetrics.SAVE.start();
+        try {
+            BinaryRunFile.write(path, table);
+            rewritePending = false;
+            RunMetrics.bytesWritten(BinaryRunFile.HEADER_BYTES + (long) table.size() * BinaryRunFile.RECORD_BYTES);
+        } catch (IOException e) {
+            System.err.println("Error saving runs: " + e.getMessage());
+        } finally {
+            RunMetrics.SAVE.stop(start);
+        }
+    }
+
+    @Override
+    public void save(List<Run> runs) {
+        RunTable table = new RunTable(runs.size());
+        for (Run r : runs) table.add(r);
+        save(table);
+    }
+
+    @Override
+    protected RunTable readTable() {
+        if (!Files.exists(path)) return new RunTable();
+        try (BinaryRunFile file = BinaryRunFile.open(path)) {
+            RunMetrics.bytesRead(BinaryRunFile.HEADER_BYTES + (long) file.size() * BinaryRunFile.RECORD_BYTES);
+            return file.toTable();
+        } catch (IOException e) {
+            System.err.println("Error loading runs: " + e.getMessage());
+            return new RunTable();
+        }
+    }
+
+    // appends rewrite the header count in place, so there is no prefix to extend: any change means a full load
+    @Override
+    public Path stateBase() {
+        return path;
+    }
+
+    @Override
+    public Path stateLog() {
+        return null;
+    }
+
+    @Override
+    public List<Run> load() {
+        RunTable table = loadTable();
+        return new ArrayList<>(table.asList());
+    }
+
+    @Override
+    public void close() {
+        closeChannel();
+    }
+
+    private FileChannel openChannel() throws IOException {
+        if (channel != null) return channel;
+
+        if (Files.exists(path) && Files.size(path) >= BinaryRunFile.HEADER_BYTES) {
+            upgrade();
+            try (BinaryRunFile file = BinaryRunFile.open(path)) {
+                count = file.size();
+                flags = file.isSorted() ? BinaryRunFile.FLAG_SORTED : 0;
+                if (file.isSorted()) {
+                    if (count > 0) lastEpochDay = file.epochDay(count - 1);
+                } else {
+                    for (int i = 0; i < count; i++) lastEpochDay = Math.max(lastEpochDay, file.epochDay(i));
+                }
+            }
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } else {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.READ, StandardOpenOption.TRUNCATE_EXISTING);
+            count = 0;
+            flags = BinaryRunFile.FLAG_SORTED;
+            channel.write(BinaryRunFile.header(0, true), 0);
+        }
+        return channel;
+    }
+
+    // numbers the rows the way a load did, so the file keeps the ids the service already handed out
+    private void upgrade() throws IOException {
+        RunTable table;
+        try (BinaryRunFile file = BinaryRunFile.open(path)) {
+            if (file.hasIds()) return;
+            table = file.toTable();
+        }
+        BinaryRunFile.write(path, new RunIndex(table).table());
+    }
+
+    private void closeChannel() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing run file: " + e.getMessage());
+        }
+        channel = null;
+        lastEpochDay = Integer.MIN_VALUE;
+    }
+}
@@ -0,0 +1,150 @@
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * Derived goal state for one {@link RunService}: today's date and week bounds, the
+ * next-run goal, the weekly goal and the last weekly breakdown. Hits are volatile
+ * reads plus one {@code clock.millis()}, and allocate nothing.
+ *
+ * <p>Invalidation is per entry. An added run only drops what it can change: the
+ * next-run goal if it is the newest run, the weekly goal if it falls in last week,
+ * the breakdown if it falls in last week or this one. Crossing midnight (by the
+ * injected {@link Clock}) drops the breakdown, whose remaining-days split changes
+ * daily; crossing into a new week also drops the weekly goal.
+ *
+ * <p>A miss is computed outside any lock and stored with the {@link #version()} read
+ * before computing; a store is ignored if anything was invalidated in between, so a
+ * value computed from the pre-add index can't outlive the add.
+ */
+public class GoalCache {
+
+    private record Day(LocalDate today, LocalDate weekStart, LocalDate weekEnd,
+                       long startMillis, long endMillis) {}
+
+    private record Breakdown(int planned, RunService.WeeklyGoalBreakdown value) {}
+
+    private final Clock clock;
+
+    private volatile Day day;             // null until first use
+    private volatile long version;        // bumped by every invalidation
+    private volatile double nextRunGoal = Double.NaN;
+    private volatile double weeklyGoal  = Double.NaN;
+    private volatile Breakdown breakdown;
+
+    public GoalCache(Clock clock) {
+        this.clock = clock;
+    }
+
+    public Clock clock() {
+        return clock;
+    }
+
+    public LocalDate today() {
+        return day().today;
+    }
+
+    public LocalDate weekStart() {
+        return day().weekStart;
+    }
+
+    public LocalDate weekEnd() {
+        return day().weekEnd;
+    }
+
+    public int remainingDaysInWeek() {
+        Day d = day();
+        return (int) (d.weekEnd.toEpochDay() - d.today.toEpochDay());
+    }
+
+    public long version() {
+        return version;
+    }
+
+    // NaN on a miss
+    public double nextRunGoal() {
+        return nextRunGoal;
+    }
+
+    // NaN on a miss
+    public double weeklyGoal() {
+        day(); // a week rollover drops the cached goal
+        return weeklyGoal;
+    }
+
+    // null on a miss
+    public RunService.WeeklyGoalBreakdown breakdown(int planned) {
+        day();
+        Breakdown b = breakdown;
+        return b != null && b.planned == planned ? b.value : null;
+    }
+
+    public synchronized void putNextRunGoal(double goal, long seen) {
+        if (version == seen) nextRunGoal = goal;
+    }
+
+    public synchronized void putWeeklyGoal(double goal, long seen) {
+        if (version == seen) weeklyGoal = goal;
+    }
+
+    public synchronized void putBreakdown(int planned, RunService.WeeklyGoalBreakdown value, long seen) {
+        if (version == seen) breakdown = new Breakdown(planned, value);
+    }
+
+    /** Call after the run is in the index; {@code latestDay} is the index's newest epoch day. */
+    public synchronized void onAdd(long epochDay, long latestDay) {
+        if (epochDay >= latestDay) dropNextRunGoal();
+        onChange(epochDay);
+    }
+
+    /** Call after the run is out of the index. */
+    public synchronized void onRemove(long epochDay) {
+        dropNextRunGoal(); // it may have been the newest run
+        onChange(epochDay);
+    }
+
+    // bumps the version even if the entry is already empty: a miss may be computing it right now
+    private void onChange(long epochDay) {
+        Day d = day;
+        if (d == null) return;
+        long weekStart = d.weekStart.toEpochDay();
+        if (epochDay >= weekStart - 7 && epochDay < weekStart) {
+            weeklyGoal = Double.NaN;
+            breakdown  = null;
+            version++;
+        } else if (epochDay >= weekStart && epochDay <= d.weekEnd.toEpochDay()) {
+            breakdown = null;
+            version++;
+        }
+    }
+
+    private void dropNextRunGoal() {
+        nextRunGoal = Double.NaN;
+        version++;
+    }
+
+    // the current day, rolled forward (or back, for a clock set back) when the clock leaves it
+    private Day day() {
+        Day d = day;
+        long now = clock.millis();
+        if (d != null && now >= d.startMillis && now < d.endMillis) return d;
+        return roll();
+    }
+
+    private synchronized Day roll() {
+        LocalDate today = LocalDate.now(clock);
+        Day old = day;
+        if (old != null && old.today.equals(today)) return old;
+
+        LocalDate weekStart = today.with(TemporalAdjusters.previousOrSame(DayOfWeek.SUNDAY));
+        Day d = new Day(today, weekStart, today.with(TemporalAdjusters.nextOrSame(DayOfWeek.SATURDAY)),
+                today.atStartOfDay(clock.getZone()).toInstant().toEpochMilli(),
+                today.plusDays(1).atStartOfDay(clock.getZone()).toInstant().toEpochMilli());
+        if (old == null || !old.weekStart.equals(weekStart)) weeklyGoal = Double.NaN;
+        breakdown = null;
+        version++;
+        day = d;
+        return d;
+    }
+}
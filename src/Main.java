@@ -1,3 +1,8 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
@@ -7,9 +12,46 @@ public class Main {
 
     static final DateTimeFormatter DATE_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     static Scanner sc = new Scanner(System.in);
-    static RunService service = new RunService(new RunRepository("runs.csv"));
-
+    static RunService service;
+    static final TextRenderer screen = new TextRenderer(); // each screen is rendered here, then written at once
+
+    // usage: Main [runs.csv | runs.bin]
+    //        Main --convert runs.csv runs.bin
+    //        Main --serve [port] [dataDir]
+    //        Main --import export.csv [runs.csv] [--dedupe]
+    //        Main --export [runs.csv] [history.txt]   (full history, newest first; stdout if no file)
+    // metrics: java -Druntracker.metrics.file=metrics.prom Main ...   (see RunMetrics)
     public static void main(String[] args) {
+        RunMetrics.configure();
+        if (args.length >= 1 && args[0].equals("--serve")) {
+            // keeps running on the server's threads; the shutdown hook writes the last metrics dump
+            serve(args.length > 1 ? Integer.parseInt(args[1]) : 8080, args.length > 2 ? args[2] : "athletes");
+            return;
+        }
+        try {
+            run(args);
+        } finally {
+            RunMetrics.stopDump();
+        }
+    }
+
+    static void run(String[] args) {
+        if (args.length == 3 && args[0].equals("--convert")) {
+            convert(args[1], args[2]);
+            return;
+        }
+        if (args.length >= 2 && args[0].equals("--import")) {
+            boolean dedupe = args[args.length - 1].equals("--dedupe");
+            int files = dedupe ? args.length - 1 : args.length;
+            importRuns(args[1], files > 2 ? args[2] : "runs.csv", dedupe);
+            return;
+        }
+        if (args.length >= 1 && args[0].equals("--export")) {
+            exportHistory(args.length > 1 ? args[1] : "runs.csv", args.length > 2 ? args[2] : null);
+            return;
+        }
+        service = new RunService(openRepository(args.length > 0 ? args[0] : "runs.csv"));
+
         System.out.println("Welcome to RunTracker!");
         boolean running = true;
         while (running) {
@@ -20,16 +62,83 @@ public class Main {
                 case "1" -> logRun();
                 case "2" -> showStats();
                 case "3" -> showHistory();
-                case "4" -> {
+                case "4" -> editRun();
+                case "5" -> {
                     System.out.println("Stay consistent. See you next run! ");
                     running = false;
                 }
                 default -> System.out.println("Invalid option, try again.");
             }
         }
+        service.close();
         sc.close();
     }
 
+    static RunRepository openRepository(String file) {
+        return file.endsWith(".bin") ? new BinaryRunRepository(file) : new WalRunRepository(file);
+    }
+
+    static void convert(String csv, String bin) {
+        try {
+            int n = BinaryRunFile.convert(Path.of(csv), Path.of(bin));
+            System.out.printf("Converted %d runs from %s to %s%n", n, csv, bin);
+        } catch (IOException e) {
+            System.err.println("Error converting runs: " + e.getMessage());
+        }
+    }
+
+    static void importRuns(String export, String file, boolean dedupe) {
+        RunService target = new RunService(openRepository(file));
+        try {
+            RunImporter.Result r = new RunImporter().importFile(Path.of(export), target, dedupe);
+            System.out.printf("Imported %d runs into %s (%d parsed, %d duplicates, %d malformed) in %.2f s, %.0f runs/sec%n",
+                    r.imported(), file, r.parsed(), r.duplicates(), r.malformed(), r.nanos() / 1e9, r.runsPerSecond());
+        } catch (IOException | IllegalStateException | UncheckedIOException e) {
+            System.err.println("Error importing runs: " + e.getMessage());
+        } finally {
+            target.close();
+        }
+    }
+
+    static void exportHistory(String file, String out) {
+        RunService source = new RunService(openRepository(file));
+        long start = System.nanoTime();
+        try {
+            if (out == null) {
+                writeHistory(source, new TextRenderer(), System.out, Integer.MAX_VALUE);
+            } else {
+                try (OutputStream os = Files.newOutputStream(Path.of(out))) {
+                    writeHistory(source, new TextRenderer(), os, Integer.MAX_VALUE);
+                }
+                System.out.printf("Exported %d runs to %s in %.2f s%n", source.getRunCount(), out,
+                        (System.nanoTime() - start) / 1e9);
+            }
+        } catch (IOException e) {
+            System.err.println("Error exporting runs: " + e.getMessage());
+        } finally {
+            source.close();
+        }
+    }
+
+    static void serve(int port, String dataDir) {
+        try {
+            // acknowledged runs are fsynced; the shared writer turns that into one fsync per batch
+            AthleteRunService athletes = new AthleteRunService(Path.of(dataDir), true, new BatchingRunWriter());
+            RunHttpServer server = new RunHttpServer(athletes, port);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.close();
+                athletes.close();
+                RunMetrics.stopDump();
+            }));
+            server.start();
+            System.out.printf("RunTracker API on http://127.0.0.1:%d/athletes/{id}/... (data in %s)%n",
+                    server.port(), dataDir);
+        } catch (IOException e) {
+            System.err.println("Error starting server: " + e.getMessage());
+            RunMetrics.stopDump();
+        }
+    }
+
 //menu
     static void printMenu() {
         System.out.println("""
@@ -40,7 +149,8 @@ public class Main {
               1. Log a run
               2. Stats & goals
               3. Run history
-              4. Exit
+              4. Edit or delete a run
+              5. Exit
             ==============================""");
         System.out.print("  Choice: ");
     }
@@ -55,7 +165,12 @@ public class Main {
 
         Run run = promptDistance(duration);
         Run dated = Run.ofMiles(date, run.getDistanceMiles(), duration);
-        service.addRun(dated);
+        try {
+            service.addRun(dated);
+        } catch (UncheckedIOException e) {
+            System.out.println("⚠  Run not saved to disk (see error above).");
+            return;
+        }
 
         System.out.println("Run saved!");
         printRunSummary(dated);
@@ -117,36 +232,50 @@ public class Main {
 
 
     static void showStats() {
-        String div = "=".repeat(46);
-        System.out.println(div);
-        System.out.println("               ** YOUR STATS **");
-        System.out.println(div);
+        screen.repeat('=', 46).nl()
+              .text("               ** YOUR STATS **").nl()
+              .repeat('=', 46).nl();
         printStatBlock("This Week  (Sun-Sat)", service.getThisCalendarWeek());
         printStatBlock("Last 7 Days", service.getLast7Days());
         printStatBlock("Last 30 Days", service.getLast30Days());
         printStatBlock("Last 365 Days", service.getLast365Days());
         printStatBlock("Calendar Year", service.getCalendarYear());
-        printStatBlock("All Time", service.getAllTime());
-        System.out.println(div);
+        printStatBlock("All Time", service.getTotals(LocalDate.MIN, LocalDate.MAX));
+        screen.repeat('=', 46).nl();
         showGoals();
     }
 
     static void printStatBlock(String label, RunService.RunStats s) {
-        System.out.println("  [ " + label + " ]");
-        System.out.printf("    Runs: %-5d  Total: %-6.2f mi  Avg: %-5.2f mi%n",
-                s.totalRuns(), s.totalMiles(), s.avgMiles());
-        System.out.printf("    Best single day: %.2f mi%n", s.highestDay());
-        System.out.println("-".repeat(46));
+        statLines(label, s);
+        screen.repeat('-', 46).nl();
+    }
+
+    // the rollups also sum duration
+    static void printStatBlock(String label, RunRollups.Totals t) {
+        statLines(label, t.toStats());
+        screen.text("    Total time: ").duration(t.durationSeconds()).nl();
+        screen.repeat('-', 46).nl();
+    }
+
+    static void statLines(String label, RunService.RunStats s) {
+        screen.text("  [ ").text(label).text(" ]").nl();
+        int m = screen.text("    Runs: ").mark();
+        screen.num(s.totalRuns()).pad(m, 5);
+        m = screen.text("  Total: ").mark();
+        screen.fixed(s.totalMiles(), 2).pad(m, 6);
+        m = screen.text(" mi  Avg: ").mark();
+        screen.fixed(s.avgMiles(), 2).pad(m, 5).text(" mi").nl();
+        screen.text("    Best single day: ").fixed(s.highestDay(), 2).text(" mi").nl();
     }
 
+    // everything up to the prompt goes out in one write with the stats above it
     static void showGoals() {
         double nextRun = service.getNextRunGoalMiles();
-        System.out.printf("%n Next run goal:  %.2f mi", nextRun);
-        if (nextRun == RunService.HALF_MARATHON) System.out.print("   Half Marathon!");
-        if (nextRun == RunService.MARATHON)      System.out.print("   Full Marathon!");
-        System.out.println();
-
-        System.out.print("Runs left this week? [Enter for default (1 per remaining day)]: ");
+        screen.nl().text(" Next run goal:  ").fixed(nextRun, 2).text(" mi");
+        if (nextRun == RunService.HALF_MARATHON) screen.text("   Half Marathon!");
+        if (nextRun == RunService.MARATHON)      screen.text("   Full Marathon!");
+        screen.nl().text("Runs left this week? [Enter for default (1 per remaining day)]: ");
+        flushScreen();
         String input = sc.nextLine().trim();
         int runsLeft = 0;
         if (!input.isEmpty()) {
@@ -155,54 +284,137 @@ public class Main {
         }
 
         RunService.WeeklyGoalBreakdown wb = service.getWeeklyGoalBreakdown(runsLeft);
-        System.out.println();
-        System.out.println(" Weekly Goal Breakdown");
-        System.out.println("─".repeat(42));
-        System.out.printf("  Week target:      %.2f mi%n",  wb.weeklyGoalMiles());
-        System.out.printf("  Already run:      %.2f mi%n",  wb.milesCompletedThisWeek());
-        System.out.printf("  Miles remaining:  %.2f mi%n",  wb.milesRemaining());
-        System.out.printf("  Runs planned:     %d%n",       wb.runsRemaining());
-        System.out.printf("  Miles per run:    %.2f mi%n",  wb.milesPerRun());
-        System.out.println("─".repeat(42));
+        screen.nl()
+              .text(" Weekly Goal Breakdown").nl()
+              .repeat('─', 42).nl()
+              .text("  Week target:      ").fixed(wb.weeklyGoalMiles(), 2).text(" mi").nl()
+              .text("  Already run:      ").fixed(wb.milesCompletedThisWeek(), 2).text(" mi").nl()
+              .text("  Miles remaining:  ").fixed(wb.milesRemaining(), 2).text(" mi").nl()
+              .text("  Runs planned:     ").num(wb.runsRemaining()).nl()
+              .text("  Miles per run:    ").fixed(wb.milesPerRun(), 2).text(" mi").nl()
+              .repeat('─', 42).nl();
+        flushScreen();
     }
 
     static void showHistory() {
-        var runs = service.getAllRuns();
-        if (runs.isEmpty()) { System.out.println("No runs logged yet."); return; }
-
-        System.out.println("\n Run History (most recent first)");
-        System.out.println("─".repeat(58));
-        System.out.printf("%-12s  %-10s  %-10s  %-10s  %-6s%n",
-                "Date", "Miles", "Duration", "Pace/mi", "Type");
-        System.out.println("─".repeat(58));
-
-        runs.stream()
-                .sorted((a, b) -> b.getDate().compareTo(a.getDate()))
-                .limit(25)
-                .forEach(r -> {
-                    String dur  = r.getDurationSeconds() > 0 ? formatDuration(r.getDurationSeconds()) : "─";
-                    String pace = r.getDurationSeconds() > 0
-                            ? String.format("%.1f min", RunService.paceMinPerMile(r)) : "─";
-                    System.out.printf("%-12s  %-10.2f  %-10s  %-10s  %-6s%n",
-                            r.getDate().format(DATE_FMT), r.getDistanceMiles(),
-                            dur, pace, r.getInputType());
-                });
-
-        if (runs.size() > 25)
-            System.out.printf("  ... and %d more in file.%n", runs.size() - 25);
-        System.out.println("─".repeat(58));
+        int total = service.getRunCount();
+        if (total == 0) { System.out.println("No runs logged yet."); return; }
+        try {
+            writeHistory(service, screen, System.out, 25);
+        } catch (IOException e) {
+            System.err.println("Error writing history: " + e.getMessage()); // System.out never throws
+        }
+    }
+
+    // the history table, newest first; past a screenful it goes out a chunk at a time, as the export does
+    static void writeHistory(RunService source, TextRenderer out, OutputStream os, int limit) throws IOException {
+        int total = source.getRunCount();
+        out.text("\n Run History (most recent first)").nl()
+           .repeat('─', 66).nl();
+        historyRow(out, "ID", "Date", "Miles", "Duration", "Pace/mi", "Type");
+        out.repeat('─', 66).nl();
+
+        source.forEachRecentRow(0, limit, row -> {
+            int m = out.mark();
+            out.num(row.id()).pad(m, 6).text("  ");
+            m = out.mark();
+            out.date(row.epochDay()).pad(m, 12).text("  ");
+            m = out.mark();
+            out.fixed(row.miles(), 2).pad(m, 10).text("  ");
+            m = out.mark();
+            if (row.durationSeconds() > 0) out.duration(row.durationSeconds()); else out.text('─');
+            out.pad(m, 10).text("  ");
+            m = out.mark();
+            if (row.durationSeconds() > 0) {
+                out.fixed(RunService.paceMinPerMile(row.miles(), row.durationSeconds()), 1).text(" min");
+            } else {
+                out.text('─');
+            }
+            out.pad(m, 10).text("  ");
+            m = out.mark();
+            out.text(row.inputType().name()).pad(m, 6).nl();
+            out.writeIfFull(os);
+        });
+
+        if (total > limit) out.text("  ... and ").num(total - limit).text(" more in file.").nl();
+        out.repeat('─', 66).nl();
+        out.writeTo(os);
+    }
+
+    private static final int[] HISTORY_WIDTHS = {6, 12, 10, 10, 10, 6};
+
+    private static void historyRow(TextRenderer out, String... cells) {
+        for (int i = 0; i < cells.length; i++) {
+            int m = out.mark();
+            out.text(cells[i]).pad(m, HISTORY_WIDTHS[i]);
+            if (i < cells.length - 1) out.text("  ");
+        }
+        out.nl();
+    }
+
+    // System.out as it is now: benchmarks swap it
+    static void flushScreen() {
+        try {
+            screen.writeTo(System.out);
+        } catch (IOException e) {
+            System.err.println("Error writing screen: " + e.getMessage());
+        }
+    }
+
+    static void editRun() {
+        if (service.getRunCount() == 0) { System.out.println("No runs logged yet."); return; }
+        showHistory();
+
+        Run run = null;
+        while (run == null) {
+            System.out.print("Run ID [Enter to cancel]: ");
+            String input = sc.nextLine().trim();
+            if (input.isEmpty()) return;
+            try { run = service.getRun(Long.parseLong(input)).orElse(null); }
+            catch (NumberFormatException ignored) {}
+            if (run == null) System.out.println("No run with that ID.");
+        }
+        printRunSummary(run);
+
+        System.out.println("  1. Edit");
+        System.out.println("  2. Delete");
+        System.out.println("  3. Cancel");
+        System.out.print("  Choice: ");
+        try {
+            switch (sc.nextLine().trim()) {
+                case "1" -> {
+                    LocalDate date = promptDate();
+                    System.out.print("Duration [hh:mm:ss or mm:ss, or Enter to skip]: ");
+                    long duration = parseDuration(sc.nextLine().trim());
+                    Run measured = promptDistance(duration);
+                    Run edited = Run.restore(date, measured.getDistanceMiles(), duration, measured.getInputType());
+                    if (!service.updateRun(run.getId(), edited)) { System.out.println("That run is gone."); return; }
+                    System.out.println("Run updated!");
+                    printRunSummary(edited);
+                }
+                case "2" -> {
+                    System.out.print("Delete this run? [y/N]: ");
+                    if (!sc.nextLine().trim().equalsIgnoreCase("y")) return;
+                    System.out.println(service.deleteRun(run.getId()) ? "Run deleted." : "That run is gone.");
+                }
+                default -> {}
+            }
+        } catch (UncheckedIOException e) {
+            System.out.println("⚠  Change not saved to disk (see error above).");
+        }
     }
 
     static void printRunSummary(Run r) {
-        System.out.println("\n--- Run Summary -------------------");
-        System.out.printf("  Date:       %s%n",       r.getDate().format(DATE_FMT));
-        System.out.printf("  Distance:   %.2f mi%n",  r.getDistanceMiles());
+        screen.text("\n--- Run Summary -------------------").nl()
+              .text("  Date:       ").date((int) r.getDate().toEpochDay()).nl()
+              .text("  Distance:   ").fixed(r.getDistanceMiles(), 2).text(" mi").nl();
         if (r.getDurationSeconds() > 0) {
-            System.out.printf("  Duration:   %s%n",   formatDuration(r.getDurationSeconds()));
-            System.out.printf("  Pace:       %.2f min/mi%n", RunService.paceMinPerMile(r));
+            screen.text("  Duration:   ").duration(r.getDurationSeconds()).nl()
+                  .text("  Pace:       ").fixed(RunService.paceMinPerMile(r), 2).text(" min/mi").nl();
         }
-        System.out.printf("  Entered as: %s%n",       r.getInputType());
-        System.out.println("-----------------------------------");
+        screen.text("  Entered as: ").text(r.getInputType().name()).nl()
+              .text("-----------------------------------").nl();
+        flushScreen();
     }
 
     static LocalDate promptDate() {
@@ -248,10 +460,6 @@ public class Main {
         }
     }
 
-    static String formatDuration(long seconds) {
-        return String.format("%02d:%02d:%02d", seconds / 3600, (seconds % 3600) / 60, seconds % 60);
-    }
-
     static long parseDuration(String s) {
         if (s == null || s.isBlank()) return 0;
         try {
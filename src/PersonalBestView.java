@@ -0,0 +1,99 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Live personal bests at fixed distances ({@link RunService#HALF_MARATHON} and
+ * {@link RunService#MARATHON} by default). A timed run counts toward every distance
+ * it covers, at its even-pace time for that distance, so a marathon also sets a half
+ * marathon time. A live add or update that beats the standing best is handed to the
+ * listener, on the publisher's thread; seeding never notifies.
+ */
+public class PersonalBestView extends RunView {
+
+    public record PersonalBest(double distanceMiles, long seconds, long runId, LocalDate date) {}
+
+    // a run logged a hair short of the distance (GPS, rounding) still counts
+    private static final double SLACK_MILES = 0.05;
+
+    private final double[] distances;
+    private final Consumer<PersonalBest> listener;
+    private final List<Map<Long, PersonalBest>> candidates = new ArrayList<>(); // per distance, by run id
+    private final PersonalBest[] best;
+
+    public PersonalBestView(Consumer<PersonalBest> listener) {
+        this(listener, RunService.HALF_MARATHON, RunService.MARATHON);
+    }
+
+    public PersonalBestView(Consumer<PersonalBest> listener, double... distances) {
+        this.listener  = listener;
+        this.distances = distances.clone();
+        this.best      = new PersonalBest[distances.length];
+        for (int d = 0; d < distances.length; d++) candidates.add(new HashMap<>());
+    }
+
+    /** The standing bests, in the order the distances were given; null where no run covers one. */
+    public synchronized List<PersonalBest> bests() {
+        List<PersonalBest> list = new ArrayList<>(best.length);
+        for (PersonalBest b : best) list.add(b);
+        return list;
+    }
+
+    @Override
+    protected void seed(RunTable table) {
+        for (int d = 0; d < distances.length; d++) {
+            candidates.get(d).clear();
+            best[d] = null;
+        }
+        for (int i = 0; i < table.size(); i++) {
+            // most runs are short: skip building their dates
+            if (coversAny(table.miles(i))) {
+                offer(table.id(i), table.date(i), table.miles(i), table.durationSeconds(i), false);
+            }
+        }
+    }
+
+    @Override
+    protected void onAdd(Run run, boolean live) {
+        offer(run.getId(), run.getDate(), run.getDistanceMiles(), run.getDurationSeconds(), live);
+    }
+
+    @Override
+    protected void onRemove(Run run) {
+        for (int d = 0; d < distances.length; d++) {
+            Map<Long, PersonalBest> runs = candidates.get(d);
+            if (runs.remove(run.getId()) == null || best[d] == null || best[d].runId() != run.getId()) continue;
+            PersonalBest next = null;
+            for (PersonalBest b : runs.values()) if (next == null || faster(b, next)) next = b;
+            best[d] = next;
+        }
+    }
+
+    private void offer(long id, LocalDate date, double miles, long seconds, boolean live) {
+        if (seconds <= 0 || miles <= 0) return;
+        for (int d = 0; d < distances.length; d++) {
+            double distance = distances[d];
+            if (miles < distance - SLACK_MILES) continue;
+            long time = Math.round(seconds * Math.min(1.0, distance / miles));
+            PersonalBest pb = new PersonalBest(distance, time, id, date);
+            candidates.get(d).put(id, pb);
+            if (best[d] == null || faster(pb, best[d])) {
+                best[d] = pb;
+                if (live) listener.accept(pb);
+            }
+        }
+    }
+
+    private boolean coversAny(double miles) {
+        for (double d : distances) if (miles >= d - SLACK_MILES) return true;
+        return false;
+    }
+
+    // ties go to the earlier run, which set the time first
+    private static boolean faster(PersonalBest a, PersonalBest b) {
+        return a.seconds() < b.seconds() || a.seconds() == b.seconds() && a.date().isBefore(b.date());
+    }
+}
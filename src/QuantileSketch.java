@@ -0,0 +1,115 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Mergeable log-linear histogram (HDR style) over positive values. Each power of two
+ * between 2^minExp and 2^maxExp is split into 32 equal sub-buckets picked straight
+ * from the top mantissa bits, so adding a value is a couple of shifts and quantiles
+ * carry at most ~1.6% relative error (half that at the reported bucket midpoint).
+ * Values outside the range land in the first or last bucket; the exact min and max
+ * are kept so the extremes still come out right. Memory is fixed by the range, not
+ * by how many values were added. Not synchronized.
+ */
+public final class QuantileSketch {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB      = 1 << SUB_BITS;
+
+    private final int   minExp;
+    private final int   maxExp;
+    private final int[] counts;
+    private long   total;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /** Resolves values in [2^minExp, 2^maxExp). */
+    public QuantileSketch(int minExp, int maxExp) {
+        if (maxExp <= minExp) throw new IllegalArgumentException("maxExp must be > minExp");
+        this.minExp = minExp;
+        this.maxExp = maxExp;
+        this.counts = new int[(maxExp - minExp) * SUB];
+    }
+
+    // a fresh, empty sketch over the same range
+    public QuantileSketch emptyCopy() {
+        return new QuantileSketch(minExp, maxExp);
+    }
+
+    /** Ignores values that are not positive and finite. */
+    public void add(double v) {
+        if (!(v > 0) || v == Double.POSITIVE_INFINITY) return;
+        counts[bucket(v)]++;
+        total++;
+        if (v < min) min = v;
+        if (v > max) max = v;
+    }
+
+    public void merge(QuantileSketch other) {
+        if (other.minExp != minExp || other.maxExp != maxExp) {
+            throw new IllegalArgumentException("sketch ranges differ");
+        }
+        if (other.total == 0) return;
+        for (int i = 0; i < counts.length; i++) counts[i] += other.counts[i];
+        total += other.total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public void clear() {
+        Arrays.fill(counts, 0);
+        total = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+    }
+
+    int serializedBytes() {
+        return 24 + 4 * counts.length;
+    }
+
+    // the range is not written: the reader already has an empty sketch over it
+    void put(ByteBuffer out) {
+        out.putLong(total).putDouble(min).putDouble(max);
+        out.asIntBuffer().put(counts);
+        out.position(out.position() + 4 * counts.length);
+    }
+
+    void get(ByteBuffer in) {
+        total = in.getLong();
+        min   = in.getDouble();
+        max   = in.getDouble();
+        in.asIntBuffer().get(counts);
+        in.position(in.position() + 4 * counts.length);
+    }
+
+    public long count() {
+        return total;
+    }
+
+    /** Nearest-rank quantile, p in [0, 1]; 0 when empty. */
+    public double quantile(double p) {
+        if (p < 0 || p > 1 || Double.isNaN(p)) throw new IllegalArgumentException("p must be in [0, 1]");
+        if (total == 0) return 0;
+        if (p == 0) return min;
+        if (p == 1) return max;
+
+        long rank = Math.max(1, (long) Math.ceil(p * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                int    e   = minExp + i / SUB;
+                double mid = Math.scalb(1.0 + (i % SUB + 0.5) / SUB, e);
+                return Math.min(max, Math.max(min, mid));
+            }
+        }
+        return max;
+    }
+
+    private int bucket(double v) {
+        int e = Math.getExponent(v);
+        if (e < minExp)  return 0;
+        if (e >= maxExp) return counts.length - 1;
+        int sub = (int) (Double.doubleToRawLongBits(v) >>> (52 - SUB_BITS)) & (SUB - 1);
+        return (e - minExp) * SUB + sub;
+    }
+}
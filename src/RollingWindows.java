@@ -0,0 +1,98 @@
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * Running count / total / max for the fixed stats-screen windows. A new run is
+ * folded into every window it falls in with O(1) work, and reads hand back a
+ * cached {@link RunService.RunStats}, so the stats screen costs the same at any
+ * history size. When the date changes the window bounds move; the windows are then
+ * re-derived from the {@link RunIndex} prefix sums (O(log n) each) rather than from
+ * a separate day-bucket ring, which also picks up future-dated runs as they come due.
+ * Not synchronized; {@link RunService} rolls and updates it under its write lock and
+ * reads through {@link #get} are side-effect free.
+ */
+public class RollingWindows {
+
+    public enum Window { THIS_WEEK, LAST_7_DAYS, LAST_30_DAYS, LAST_365_DAYS, CALENDAR_YEAR, ALL_TIME }
+
+    private static final Window[] WINDOWS = Window.values();
+
+    private final RunIndex index;
+    private final Clock clock;
+    private volatile LocalDate today; // null until first use, or when a roll is pending
+
+    private final long[]   fromDay = new long[WINDOWS.length];
+    private final long[]   toDay   = new long[WINDOWS.length];
+    private final int[]    count   = new int[WINDOWS.length];
+    private final double[] total   = new double[WINDOWS.length];
+    private final double[] max     = new double[WINDOWS.length];
+    private final RunService.RunStats[] cached = new RunService.RunStats[WINDOWS.length];
+
+    public RollingWindows(RunIndex index) {
+        this(index, Clock.systemDefaultZone());
+    }
+
+    public RollingWindows(RunIndex index, Clock clock) {
+        this.index = index;
+        this.clock = clock;
+    }
+
+    public boolean isCurrent(LocalDate now) {
+        return now.equals(today);
+    }
+
+    // callers roll first when !isCurrent
+    public RunService.RunStats get(Window w) {
+        return cached[w.ordinal()];
+    }
+
+    // call after the run is in the index
+    public void onAdd(Run run) {
+        if (!LocalDate.now(clock).equals(today)) {
+            today = null; // bounds are stale; the next read rebuilds from the index
+            return;
+        }
+        long day = run.getDate().toEpochDay();
+        double miles = run.getDistanceMiles();
+        for (int i = 0; i < WINDOWS.length; i++) {
+            if (day < fromDay[i] || day > toDay[i]) continue;
+            count[i]++;
+            total[i] += miles;
+            max[i] = Math.max(max[i], miles);
+            cached[i] = new RunService.RunStats(count[i], total[i], total[i] / count[i], max[i]);
+        }
+    }
+
+    // forces a rebuild on next read, for changes that are not plain appends
+    public void invalidate() {
+        today = null;
+    }
+
+    public void roll(LocalDate now) {
+        for (Window w : WINDOWS) {
+            LocalDate from, to = now;
+            switch (w) {
+                case THIS_WEEK -> {
+                    from = now.with(TemporalAdjusters.previousOrSame(DayOfWeek.SUNDAY));
+                    to   = now.with(TemporalAdjusters.nextOrSame(DayOfWeek.SATURDAY));
+                }
+                case LAST_7_DAYS   -> from = now.minusDays(7);
+                case LAST_30_DAYS  -> from = now.minusDays(30);
+                case LAST_365_DAYS -> from = now.minusDays(365);
+                case CALENDAR_YEAR -> from = LocalDate.of(now.getYear(), 1, 1);
+                default            -> from = LocalDate.MIN;
+            }
+            int i = w.ordinal();
+            RunService.RunStats s = index.stats(from, to);
+            fromDay[i] = from.toEpochDay();
+            toDay[i]   = to.toEpochDay();
+            count[i]   = s.totalRuns();
+            total[i]   = s.totalMiles();
+            max[i]     = s.highestDay();
+            cached[i]  = s;
+        }
+        today = now;
+    }
+}
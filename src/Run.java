@@ -13,12 +13,18 @@ public class Run {
     private double distanceMiles;
     private long durationSeconds;
     private InputType inputType;
+    private long id; // assigned when the run is first stored; 0 until then
 
     private Run(LocalDate date, double distanceMiles, long durationSeconds, InputType inputType) {
+        this(date, distanceMiles, durationSeconds, inputType, 0);
+    }
+
+    private Run(LocalDate date, double distanceMiles, long durationSeconds, InputType inputType, long id) {
         this.date = date;
         this.distanceMiles = distanceMiles;
         this.durationSeconds = durationSeconds;
         this.inputType = inputType;
+        this.id = id;
     }
 
     public static Run ofMiles(LocalDate date, double miles, long durationSeconds) {
@@ -34,6 +40,20 @@ public class Run {
         return new Run(date, miles, durationSeconds, InputType.LAPS);
     }
 
+    // rebuilds a stored run as-is; distance is already in miles
+    static Run restore(LocalDate date, double distanceMiles, long durationSeconds, InputType inputType) {
+        return new Run(date, distanceMiles, durationSeconds, inputType);
+    }
+
+    static Run restore(LocalDate date, double distanceMiles, long durationSeconds, InputType inputType, long id) {
+        return new Run(date, distanceMiles, durationSeconds, inputType, id);
+    }
+
+    // the same run under a stored id
+    Run withId(long id) {
+        return new Run(date, distanceMiles, durationSeconds, inputType, id);
+    }
+
     public LocalDate getDate(){
         return date;
     }
@@ -49,6 +69,9 @@ public class Run {
     public InputType getInputType() {
         return inputType;
     }
+    public long getId() {
+        return id;
+    }
 
     public static double standardTrackFeet() {
         return TRACK_STD_FT;
@@ -0,0 +1,293 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streaming parser for the runs.csv format. Bytes are read into one reusable buffer
+ * and each field is decoded in place (dates straight to epoch days, decimals as
+ * fixed-point), so a well-formed row costs no allocation at all. Malformed rows are
+ * reported with their line number and byte offset, then skipped.
+ */
+public class RunCsvParser {
+
+    private static final int DEFAULT_BUFFER_BYTES = 1 << 16;
+    private static final long DAYS_0000_TO_1970 = 719_528L;
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final Run.InputType[] TYPES = Run.InputType.values();
+    private static final byte[][] TYPE_NAMES = new byte[TYPES.length][];
+    static {
+        for (int i = 0; i < TYPES.length; i++) TYPE_NAMES[i] = TYPES[i].name().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private final ByteBuffer buffer;
+    private final byte[] bytes;
+
+    // per-line scratch, set by the field decoders
+    private long   parsedLong;
+    private double parsedDouble;
+    private int    parsedType;
+    private int    malformed;
+
+    public RunCsvParser() {
+        this(DEFAULT_BUFFER_BYTES);
+    }
+
+    public RunCsvParser(int bufferBytes) {
+        this.buffer = ByteBuffer.allocate(bufferBytes);
+        this.bytes  = buffer.array();
+    }
+
+    /** Appends every well-formed row of {@code file} to {@code out}; returns the number of malformed rows. */
+    public int parse(Path file, RunTable out) throws IOException {
+        return parse(file, 0, out);
+    }
+
+    // the same from byte `from`, which must start a line; reported line numbers count from there
+    public int parse(Path file, long from, RunTable out) throws IOException {
+        malformed = 0;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ch.position(from);
+            int  filled     = 0;     // valid bytes in the buffer
+            int  scanFrom   = 0;     // bytes before this index hold no newline
+            long base       = from;  // file offset of bytes[0]
+            int  lineNum    = 0;
+            boolean discard = false; // inside an over-long line, dropping bytes until its newline
+
+            while (true) {
+                buffer.limit(bytes.length).position(filled);
+                int n = ch.read(buffer);
+                boolean eof = n < 0;
+                if (n > 0) filled += n;
+
+                int start = 0;
+                for (int i = scanFrom; i < filled; i++) {
+                    if (bytes[i] != '\n') continue;
+                    lineNum++;
+                    if (!discard) parseLine(out, start, i, lineNum, base + start);
+                    discard = false;
+                    start = i + 1;
+                }
+
+                if (eof) {
+                    if (start < filled && !discard) parseLine(out, start, filled, lineNum + 1, base + start);
+                    break;
+                }
+
+                if (start == 0 && filled == bytes.length) {
+                    if (!discard) report(lineNum + 1, base, "line longer than " + bytes.length + " bytes");
+                    discard  = true;
+                    base    += filled;
+                    filled   = 0;
+                    scanFrom = 0;
+                    continue;
+                }
+
+                System.arraycopy(bytes, start, bytes, 0, filled - start);
+                base    += start;
+                filled  -= start;
+                scanFrom = filled;
+            }
+        }
+        return malformed;
+    }
+
+    private void parseLine(RunTable out, int start, int end, int lineNum, long offset) {
+        if (end > start && bytes[end - 1] == '\r') end--;
+        if (offset == 0 && end - start >= 3
+                && bytes[start] == (byte) 0xEF && bytes[start + 1] == (byte) 0xBB && bytes[start + 2] == (byte) 0xBF) {
+            start += 3;
+        }
+        if (isBlank(start, end) || bytes[start] == '#') return;
+
+        int c1 = indexOf(',', start, end);
+        int c2 = c1 < 0 ? -1 : indexOf(',', c1 + 1, end);
+        int c3 = c2 < 0 ? -1 : indexOf(',', c2 + 1, end);
+        if (c3 < 0) {
+            report(lineNum, offset, "expected 4 fields");
+            return;
+        }
+        int c4 = indexOf(',', c3 + 1, end);
+        int typeEnd = c4 < 0 ? end : c4;
+
+        if (!parseEpochDay(start, c1)) {
+            report(lineNum, offset, "bad date");
+            return;
+        }
+        int day = (int) parsedLong;
+        if (!parseDecimal(c1 + 1, c2)) {
+            report(lineNum, offset + (c1 + 1 - start), "bad distance");
+            return;
+        }
+        double miles = parsedDouble;
+        if (!parseLong(c2 + 1, c3)) {
+            report(lineNum, offset + (c2 + 1 - start), "bad duration");
+            return;
+        }
+        long duration = parsedLong;
+        if (!parseType(c3 + 1, typeEnd)) {
+            report(lineNum, offset + (c3 + 1 - start), "unknown input type");
+            return;
+        }
+        int type = parsedType;
+        long id = 0; // older files have no id column; RunIndex numbers those rows
+        if (c4 >= 0) {
+            int idEnd = indexOf(',', c4 + 1, end);
+            if (!parseLong(c4 + 1, idEnd < 0 ? end : idEnd) || parsedLong < 0) {
+                report(lineNum, offset + (c4 + 1 - start), "bad id");
+                return;
+            }
+            id = parsedLong;
+        }
+        out.add(day, miles, duration, TYPES[type], id);
+    }
+
+    // yyyy-MM-dd
+    private boolean parseEpochDay(int s, int e) {
+        while (s < e && isSpace(bytes[s])) s++;
+        while (e > s && isSpace(bytes[e - 1])) e--;
+        if (e - s != 10 || bytes[s + 4] != '-' || bytes[s + 7] != '-') return false;
+
+        int y = digits(s, 4), m = digits(s + 5, 2), d = digits(s + 8, 2);
+        if (y < 0 || m < 1 || m > 12 || d < 1 || d > lengthOfMonth(y, m)) return false;
+
+        long total = 365L * y + (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+        total += (367 * m - 362) / 12;
+        total += d - 1;
+        if (m > 2) {
+            total--;
+            if (!isLeap(y)) total--;
+        }
+        parsedLong = total - DAYS_0000_TO_1970;
+        return true;
+    }
+
+    // [-]digits[.digits]; anything fancier (exponents, > 15 significant digits) falls back to Double.parseDouble
+    private boolean parseDecimal(int s, int e) {
+        while (s < e && isSpace(bytes[s])) s++;
+        while (e > s && isSpace(bytes[e - 1])) e--;
+        if (s == e) return false;
+
+        int i = s;
+        boolean neg = bytes[i] == '-';
+        if (neg || bytes[i] == '+') i++;
+
+        long mantissa = 0;
+        int digitCount = 0, fractionDigits = 0;
+        boolean seenDot = false, seenDigit = false;
+        for (; i < e; i++) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                if (digitCount == 15) return parseDecimalSlow(s, e);
+                mantissa = mantissa * 10 + (b - '0');
+                if (mantissa != 0) digitCount++;
+                seenDigit = true;
+                if (seenDot) fractionDigits++;
+            } else if (b == '.' && !seenDot) {
+                seenDot = true;
+            } else {
+                return parseDecimalSlow(s, e);
+            }
+        }
+        if (!seenDigit) return false;
+        if (fractionDigits >= POW10.length) return parseDecimalSlow(s, e);
+
+        // both operands are exact doubles, so one division is correctly rounded
+        double v = mantissa / POW10[fractionDigits];
+        parsedDouble = neg ? -v : v;
+        return true;
+    }
+
+    private boolean parseDecimalSlow(int s, int e) {
+        try {
+            parsedDouble = Double.parseDouble(new String(bytes, s, e - s, StandardCharsets.US_ASCII));
+            return true;
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+
+    private boolean parseLong(int s, int e) {
+        while (s < e && isSpace(bytes[s])) s++;
+        while (e > s && isSpace(bytes[e - 1])) e--;
+        if (s == e) return false;
+
+        int i = s;
+        boolean neg = bytes[i] == '-';
+        if (neg || bytes[i] == '+') i++;
+        if (i == e) return false;
+
+        long v = 0;
+        for (; i < e; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) return false;
+            if (v > (Long.MAX_VALUE - digit) / 10) return false;
+            v = v * 10 + digit;
+        }
+        parsedLong = neg ? -v : v;
+        return true;
+    }
+
+    private boolean parseType(int s, int e) {
+        while (s < e && isSpace(bytes[s])) s++;
+        while (e > s && isSpace(bytes[e - 1])) e--;
+        outer:
+        for (int t = 0; t < TYPE_NAMES.length; t++) {
+            byte[] name = TYPE_NAMES[t];
+            if (name.length != e - s) continue;
+            for (int k = 0; k < name.length; k++) {
+                if (bytes[s + k] != name[k]) continue outer;
+            }
+            parsedType = t;
+            return true;
+        }
+        return false;
+    }
+
+    private int digits(int s, int len) {
+        int v = 0;
+        for (int i = s; i < s + len; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) return -1;
+            v = v * 10 + digit;
+        }
+        return v;
+    }
+
+    private int indexOf(char c, int s, int e) {
+        for (int i = s; i < e; i++) if (bytes[i] == c) return i;
+        return -1;
+    }
+
+    private boolean isBlank(int s, int e) {
+        for (int i = s; i < e; i++) if (!isSpace(bytes[i])) return false;
+        return true;
+    }
+
+    private void report(int lineNum, long offset, String reason) {
+        malformed++;
+        System.err.println("Skipping malformed line " + lineNum + " (byte " + offset + "): " + reason);
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    private static boolean isLeap(int y) {
+        return (y & 3) == 0 && (y % 100 != 0 || y % 400 == 0);
+    }
+
+    private static int lengthOfMonth(int y, int m) {
+        return switch (m) {
+            case 2 -> isLeap(y) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+}
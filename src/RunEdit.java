@@ -0,0 +1,15 @@
+/** A change to a stored run: its replacement (keeping the id), or a deletion when {@code run} is null. */
+public record RunEdit(long id, Run run) {
+
+    public static RunEdit update(Run run) {
+        return new RunEdit(run.getId(), run);
+    }
+
+    public static RunEdit delete(long id) {
+        return new RunEdit(id, null);
+    }
+
+    public boolean isDelete() {
+        return run == null;
+    }
+}
@@ -0,0 +1,28 @@
+/**
+ * A change to one athlete's runs, as published by {@link RunService#events()}.
+ * {@code run} is the run as now stored (null for a delete); {@code previous} is what
+ * it replaced (null for an add). {@code seq} counts up by one per event from each
+ * service, so a subscriber can tell when an overflow policy dropped some. A drop
+ * with no later event behind it is reported by a {@code GAP} event instead: its
+ * {@code seq} is the last one dropped, and {@code run} and {@code previous} are null.
+ */
+public record RunEvent(long seq, Kind kind, Run run, Run previous) {
+
+    public enum Kind { ADDED, UPDATED, DELETED, GAP }
+
+    static RunEvent added(long seq, Run run) {
+        return new RunEvent(seq, Kind.ADDED, run, null);
+    }
+
+    static RunEvent updated(long seq, Run previous, Run run) {
+        return new RunEvent(seq, Kind.UPDATED, run, previous);
+    }
+
+    static RunEvent deleted(long seq, Run previous) {
+        return new RunEvent(seq, Kind.DELETED, null, previous);
+    }
+
+    static RunEvent gap(long seq) {
+        return new RunEvent(seq, Kind.GAP, null, null);
+    }
+}
@@ -0,0 +1,233 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link Flow.Publisher} of {@link RunEvent}s with a bounded queue per subscriber.
+ * {@link #publish} never blocks: it appends to each subscriber's queue and, if that
+ * subscriber has outstanding demand, schedules a drain on the executor, so a slow
+ * subscriber holds up only itself. What happens when a queue is full is the
+ * {@link Overflow} policy; every drop is counted, per subscriber and in total.
+ * Delivery to one subscriber is serial and in publish order, as Flow requires.
+ */
+public class RunEventPublisher implements Flow.Publisher<RunEvent>, AutoCloseable {
+
+    public enum Overflow {
+        /** Discard the incoming event; a {@link RunEvent.Kind#GAP} follows the queue if nothing newer does. */
+        DROP_NEWEST,
+        /** Discard the oldest queued event to make room. */
+        DROP_OLDEST,
+        /** Never drop: the queue grows past its capacity (memory is the only bound). */
+        BUFFER
+    }
+
+    public record SubscriberMetrics(String subscriber, long delivered, long dropped, int queued, int maxQueued,
+                                    long outstandingDemand) {}
+
+    public record Metrics(long published, long dropped, List<SubscriberMetrics> subscribers) {}
+
+    private final Executor executor;
+    private final int capacity;
+    private final Overflow overflow;
+    private final CopyOnWriteArrayList<Sub> subs = new CopyOnWriteArrayList<>();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder dropped   = new LongAdder();
+    private volatile boolean closed;
+
+    // subscribers may block, so they get their own daemon threads rather than the common pool
+    private static final Executor SHARED = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "run-events");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public RunEventPublisher() {
+        this(SHARED, 1_024, Overflow.DROP_OLDEST);
+    }
+
+    public RunEventPublisher(int capacity, Overflow overflow) {
+        this(SHARED, capacity, overflow);
+    }
+
+    /**
+     * @param executor delivers events; one drain task per subscriber at a time
+     * @param capacity events queued per subscriber before the overflow policy applies
+     */
+    public RunEventPublisher(Executor executor, int capacity, Overflow overflow) {
+        this.executor = executor;
+        this.capacity = Math.max(1, capacity);
+        this.overflow = overflow;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super RunEvent> subscriber) {
+        Sub s = new Sub(subscriber);
+        if (closed) {
+            subscriber.onSubscribe(s);
+            subscriber.onComplete();
+            return;
+        }
+        subs.add(s);
+        subscriber.onSubscribe(s);
+    }
+
+    // O(subscribers), never blocks; safe to call under the caller's locks
+    public void publish(RunEvent event) {
+        if (closed) return;
+        published.increment();
+        for (Sub s : subs) s.offer(event);
+    }
+
+    public boolean hasSubscribers() {
+        return !subs.isEmpty();
+    }
+
+    public Metrics metrics() {
+        List<SubscriberMetrics> list = new ArrayList<>(subs.size());
+        for (Sub s : subs) list.add(s.metrics());
+        return new Metrics(published.sum(), dropped.sum(), list);
+    }
+
+    // subscribers get onComplete once they have drained what was already published
+    @Override
+    public void close() {
+        closed = true;
+        for (Sub s : subs) s.complete();
+    }
+
+    private final class Sub implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super RunEvent> subscriber;
+        private final ArrayDeque<RunEvent> queue = new ArrayDeque<>();
+        private RunEvent gap; // last event dropped with nothing queued behind it, guarded by queue
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger(); // drain scheduled or running
+        private final LongAdder delivered = new LongAdder();
+        private final LongAdder subDropped = new LongAdder();
+        private int maxQueued;
+        private volatile boolean done;     // cancelled or failed: stop delivering
+        private volatile boolean complete; // publisher closed: onComplete after the queue drains
+
+        Sub(Flow.Subscriber<? super RunEvent> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        void offer(RunEvent e) {
+            if (done) return;
+            synchronized (queue) {
+                boolean full = queue.size() >= capacity && overflow != Overflow.BUFFER;
+                if (full) drop();
+                if (full && overflow == Overflow.DROP_NEWEST) {
+                    gap = RunEvent.gap(e.seq());
+                } else {
+                    if (full) queue.poll();
+                    queue.add(e);
+                    gap = null; // a later event shows the hole by its seq
+                    maxQueued = Math.max(maxQueued, queue.size());
+                }
+            }
+            if (demand.get() > 0) schedule();
+        }
+
+        void complete() {
+            complete = true;
+            schedule();
+        }
+
+        private void drop() {
+            subDropped.increment();
+            dropped.increment();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("request must be positive, got " + n));
+                return;
+            }
+            demand.accumulateAndGet(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            done = true;
+            subs.remove(this);
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RuntimeException e) {
+                    wip.set(0);
+                    fail(e);
+                }
+            }
+        }
+
+        // the drain: delivers while there is demand, and re-checks if more work arrived meanwhile
+        @Override
+        public void run() {
+            int missed = 1;
+            while (true) {
+                while (!done && demand.get() > 0) {
+                    RunEvent e;
+                    synchronized (queue) {
+                        e = queue.poll();
+                        if (e == null) {
+                            e = gap;
+                            gap = null;
+                        }
+                    }
+                    if (e == null) break;
+                    demand.decrementAndGet();
+                    try {
+                        subscriber.onNext(e);
+                        delivered.increment();
+                    } catch (RuntimeException ex) {
+                        fail(ex);
+                    }
+                }
+                if (!done && complete && isEmpty()) {
+                    done = true;
+                    subs.remove(this);
+                    subscriber.onComplete();
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) return;
+            }
+        }
+
+        private boolean isEmpty() {
+            synchronized (queue) {
+                return queue.isEmpty() && gap == null;
+            }
+        }
+
+        private void fail(Throwable t) {
+            if (done) return;
+            done = true;
+            subs.remove(this);
+            System.err.println("Error in run event subscriber " + subscriber + ": " + t);
+            subscriber.onError(t);
+        }
+
+        SubscriberMetrics metrics() {
+            int queued, max;
+            synchronized (queue) {
+                queued = queue.size();
+                max    = maxQueued;
+            }
+            return new SubscriberMetrics(subscriber.toString(), delivered.sum(), subDropped.sum(), queued, max,
+                    demand.get());
+        }
+    }
+}
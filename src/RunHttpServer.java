@@ -0,0 +1,247 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local JSON API over {@link AthleteRunService}, on the JDK's built-in HTTP server.
+ *
+ * <pre>
+ * POST /athletes/{id}/runs?date=yyyy-MM-dd&amp;miles=3.1&amp;duration=1800   (or km=, or laps=&amp;trackFeet=)
+ * GET  /athletes/{id}/runs?offset=0&amp;limit=25                          newest first
+ * PUT  /athletes/{id}/runs/{runId}?date=...&amp;miles=...                 replaces the run, same parameters as POST
+ * DELETE /athletes/{id}/runs/{runId}
+ * GET  /athletes/{id}/stats?from=yyyy-MM-dd&amp;to=yyyy-MM-dd
+ * GET  /athletes/{id}/weekly-goal?runsLeft=0
+ * </pre>
+ *
+ * Requests are handled on virtual threads when the runtime has them (JDK 21+),
+ * otherwise on a fixed platform-thread pool.
+ */
+public class RunHttpServer implements Closeable {
+
+    private static final int MAX_PAGE = 1_000;
+
+    static {
+        // read once by the JDK server: without nodelay, small responses stall ~40 ms behind
+        // delayed ACKs, and the default idle-connection cap (200) churns keep-alive clients
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        if (System.getProperty("sun.net.httpserver.maxIdleConnections") == null) {
+            System.setProperty("sun.net.httpserver.maxIdleConnections", "16384");
+        }
+    }
+
+    private final AthleteRunService athletes;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public RunHttpServer(AthleteRunService athletes, int port) throws IOException {
+        this.athletes = athletes;
+        this.server   = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 4096);
+        this.executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/athletes/", this::handle);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    // virtual threads need JDK 21; looked up reflectively so the tree still builds on 17
+    static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Math.max(8, 4 * Runtime.getRuntime().availableProcessors()));
+        }
+    }
+
+    private void handle(HttpExchange ex) throws IOException {
+        try {
+            String[] path = ex.getRequestURI().getPath().split("/");
+            // "", "athletes", id, resource[, runId]
+            if (path.length != 4 && !(path.length == 5 && path[3].equals("runs"))) {
+                send(ex, 404, error("not found"));
+                return;
+            }
+            String method = ex.getRequestMethod();
+            RunService service = athletes.forAthlete(path[2]);
+            Map<String, String> q = query(ex.getRequestURI().getRawQuery());
+
+            if (path.length == 5) {
+                long runId = Long.parseLong(path[4]);
+                if (method.equals("PUT")) {
+                    Run run = parseRun(q).withId(runId);
+                    if (service.updateRun(runId, run)) send(ex, 200, runJson(new StringBuilder(), run).toString());
+                    else                               send(ex, 404, error("no run " + runId));
+                } else if (method.equals("DELETE")) {
+                    if (service.deleteRun(runId)) send(ex, 200, "{\"deleted\":" + runId + "}");
+                    else                          send(ex, 404, error("no run " + runId));
+                } else {
+                    send(ex, 405, error("method not allowed"));
+                }
+                return;
+            }
+
+            switch (path[3]) {
+                case "runs" -> {
+                    if (method.equals("POST"))     send(ex, 201, runJson(new StringBuilder(), service.addRun(parseRun(q))).toString());
+                    else if (method.equals("GET")) send(ex, 200, history(service, q));
+                    else                           send(ex, 405, error("method not allowed"));
+                }
+                case "stats" -> {
+                    if (!method.equals("GET")) { send(ex, 405, error("method not allowed")); return; }
+                    LocalDate to   = date(q.get("to"), LocalDate.now());
+                    LocalDate from = date(q.get("from"), LocalDate.MIN);
+                    send(ex, 200, statsJson(service.getTotals(from, to)));
+                }
+                case "weekly-goal" -> {
+                    if (!method.equals("GET")) { send(ex, 405, error("method not allowed")); return; }
+                    int runsLeft = Integer.parseInt(q.getOrDefault("runsLeft", "0"));
+                    send(ex, 200, weeklyJson(service.getWeeklyGoalBreakdown(runsLeft)));
+                }
+                default -> send(ex, 404, error("not found"));
+            }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            send(ex, 400, error(e.getMessage()));
+        } catch (RuntimeException e) {
+            System.err.println("Error handling " + ex.getRequestURI() + ": " + e);
+            send(ex, 500, error("internal error"));
+        } finally {
+            ex.close();
+        }
+    }
+
+    private static Run parseRun(Map<String, String> q) {
+        LocalDate date = date(q.get("date"), LocalDate.now());
+        long duration  = Long.parseLong(q.getOrDefault("duration", "0"));
+        if (duration < 0) throw new IllegalArgumentException("duration must be >= 0");
+
+        Run run;
+        if (q.containsKey("miles")) {
+            run = Run.ofMiles(date, positive(q.get("miles"), "miles"), duration);
+        } else if (q.containsKey("km")) {
+            run = Run.ofKm(date, positive(q.get("km"), "km"), duration);
+        } else if (q.containsKey("laps")) {
+            int laps = Integer.parseInt(q.get("laps"));
+            if (laps <= 0) throw new IllegalArgumentException("laps must be > 0");
+            double trackFeet = q.containsKey("trackFeet") ? positive(q.get("trackFeet"), "trackFeet") : Run.standardTrackFeet();
+            run = Run.ofLaps(date, laps, trackFeet, duration);
+        } else {
+            throw new IllegalArgumentException("one of miles, km or laps is required");
+        }
+        return run;
+    }
+
+    private static String history(RunService service, Map<String, String> q) {
+        int offset = Integer.parseInt(q.getOrDefault("offset", "0"));
+        int limit  = Integer.parseInt(q.getOrDefault("limit", "25"));
+        if (offset < 0 || limit < 0 || limit > MAX_PAGE) {
+            throw new IllegalArgumentException("offset must be >= 0 and limit in [0, " + MAX_PAGE + "]");
+        }
+        List<Run> page = service.getRecentRuns(offset, limit);
+
+        StringBuilder sb = new StringBuilder(64 + page.size() * 112);
+        sb.append("{\"offset\":").append(offset)
+          .append(",\"limit\":").append(limit)
+          .append(",\"total\":").append(service.getRunCount())
+          .append(",\"runs\":[");
+        for (int i = 0; i < page.size(); i++) {
+            if (i > 0) sb.append(',');
+            runJson(sb, page.get(i));
+        }
+        return sb.append("]}").toString();
+    }
+
+    static StringBuilder runJson(StringBuilder sb, Run r) {
+        return sb.append("{\"id\":").append(r.getId())
+                 .append(",\"date\":\"").append(r.getDate())
+                 .append("\",\"miles\":").append(num(r.getDistanceMiles()))
+                 .append(",\"durationSeconds\":").append(r.getDurationSeconds())
+                 .append(",\"inputType\":\"").append(r.getInputType().name())
+                 .append("\",\"paceMinPerMile\":").append(num(RunService.paceMinPerMile(r)))
+                 .append('}');
+    }
+
+    static String statsJson(RunRollups.Totals t) {
+        RunService.RunStats s = t.toStats();
+        return "{\"totalRuns\":" + s.totalRuns()
+                + ",\"totalMiles\":" + num(s.totalMiles())
+                + ",\"avgMiles\":" + num(s.avgMiles())
+                + ",\"highestDay\":" + num(s.highestDay())
+                + ",\"durationSeconds\":" + t.durationSeconds() + "}";
+    }
+
+    static String weeklyJson(RunService.WeeklyGoalBreakdown wb) {
+        return "{\"weeklyGoalMiles\":" + num(wb.weeklyGoalMiles())
+                + ",\"milesCompletedThisWeek\":" + num(wb.milesCompletedThisWeek())
+                + ",\"milesRemaining\":" + num(wb.milesRemaining())
+                + ",\"runsRemaining\":" + wb.runsRemaining()
+                + ",\"milesPerRun\":" + num(wb.milesPerRun()) + "}";
+    }
+
+    private static String error(String message) {
+        String m = message == null ? "" : message.replace("\\", "\\\\").replace("\"", "\\\"");
+        return "{\"error\":\"" + m + "\"}";
+    }
+
+    private static String num(double v) {
+        return String.format(Locale.ROOT, "%.4f", v);
+    }
+
+    private static double positive(String s, String name) {
+        double v = Double.parseDouble(s);
+        if (!(v > 0) || Double.isInfinite(v)) throw new IllegalArgumentException(name + " must be > 0");
+        return v;
+    }
+
+    private static LocalDate date(String s, LocalDate fallback) {
+        return s == null || s.isEmpty() ? fallback : LocalDate.parse(s);
+    }
+
+    private static Map<String, String> query(String raw) {
+        Map<String, String> q = new HashMap<>();
+        if (raw == null || raw.isEmpty()) return q;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String k = eq < 0 ? pair : pair.substring(0, eq);
+            String v = eq < 0 ? "" : pair.substring(eq + 1);
+            q.put(URLDecoder.decode(k, StandardCharsets.UTF_8), URLDecoder.decode(v, StandardCharsets.UTF_8));
+        }
+        return q;
+    }
+
+    private static void send(HttpExchange ex, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        ex.sendResponseHeaders(status, body.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
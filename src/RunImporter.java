@@ -0,0 +1,193 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bulk import of exported run histories. The file is split into byte ranges that
+ * fork-join tasks parse in parallel; the results are sorted by date and handed to
+ * {@link RunService#addRuns} in one call, so the store merges them in a single pass
+ * and persists them with a single flush.
+ *
+ * <pre>
+ * date,distance,unit[,duration[,trackFeet]]
+ * 2024-03-02,5.2,mi,45:10
+ * 2024-03-03,10,km,3120
+ * 2024-03-05,24,laps,1:02:00,1320
+ * </pre>
+ * Units: mi / miles, km, laps (distance is the lap count; trackFeet defaults to a
+ * standard outdoor track). Duration is seconds, mm:ss or hh:mm:ss, or empty. A header
+ * line and '#' comments are skipped.
+ */
+public class RunImporter {
+
+    public record Result(int parsed, int malformed, int duplicates, int imported, long nanos) {
+        public double runsPerSecond() {
+            return nanos == 0 ? 0 : parsed / (nanos / 1e9);
+        }
+    }
+
+    private static final int  MAX_LINE_BYTES = 64 * 1024;
+    private static final long MIN_CHUNK_BYTES = 1 << 20;
+    private static final int  MAX_REPORTED = 20;
+
+    private final ForkJoinPool pool;
+
+    public RunImporter() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public RunImporter(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /** @param dedupe skip runs matching one already stored or earlier in the file on (date, distance, duration) */
+    public Result importFile(Path file, RunService service, boolean dedupe) throws IOException {
+        long start = System.nanoTime();
+        AtomicInteger malformed = new AtomicInteger();
+
+        List<Run> runs;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            long chunk = Math.max(MIN_CHUNK_BYTES, size / (pool.getParallelism() * 4L) + 1);
+            runs = pool.invoke(new ParseTask(ch, size, 0, size, chunk, malformed));
+        }
+        int parsed = runs.size();
+        runs.sort((a, b) -> a.getDate().compareTo(b.getDate()));
+
+        int duplicates = 0;
+        if (dedupe) {
+            Set<String> seen = new HashSet<>();
+            List<Run> unique = new ArrayList<>(runs.size());
+            for (Run r : runs) {
+                String key = r.getDate().toEpochDay() + ":" + Math.round(r.getDistanceMiles() * 10_000.0)
+                        + ":" + r.getDurationSeconds();
+                if (!seen.add(key) || service.hasRun(r)) duplicates++;
+                else unique.add(r);
+            }
+            runs = unique;
+        }
+
+        if (!runs.isEmpty()) service.addRuns(runs);
+        return new Result(parsed, malformed.get(), duplicates, runs.size(), System.nanoTime() - start);
+    }
+
+    /** Parses the lines that start inside [from, to); the last one may run past {@code to}. */
+    private static final class ParseTask extends RecursiveTask<List<Run>> {
+        private static final long serialVersionUID = 1L;
+        private final FileChannel ch;
+        private final long size, from, to, chunk;
+        private final AtomicInteger malformed;
+
+        ParseTask(FileChannel ch, long size, long from, long to, long chunk, AtomicInteger malformed) {
+            this.ch = ch;
+            this.size = size;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+            this.malformed = malformed;
+        }
+
+        @Override
+        protected List<Run> compute() {
+            if (to - from > chunk) {
+                long mid = from + (to - from) / 2;
+                ParseTask right = new ParseTask(ch, size, mid, to, chunk, malformed);
+                right.fork();
+                List<Run> left = new ParseTask(ch, size, from, mid, chunk, malformed).compute();
+                left.addAll(right.join());
+                return left;
+            }
+            try {
+                return parseRange();
+            } catch (IOException e) {
+                throw new IllegalStateException("Error reading import file: " + e.getMessage(), e);
+            }
+        }
+
+        private List<Run> parseRange() throws IOException {
+            List<Run> out = new ArrayList<>();
+            if (from >= to) return out;
+
+            // one byte of look-behind to tell whether `from` starts a line, and slack for the last line
+            long mapStart = Math.max(0, from - 1);
+            long mapEnd   = Math.min(size, to + MAX_LINE_BYTES);
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+            byte[] bytes = new byte[(int) (mapEnd - mapStart)];
+            buf.get(bytes);
+
+            int pos = (int) (from - mapStart);
+            int limit = (int) (to - mapStart);
+            if (from > 0 && bytes[pos - 1] != '\n') {
+                while (pos < bytes.length && bytes[pos] != '\n') pos++;
+                pos++;
+            }
+            while (pos < limit) {
+                int end = pos;
+                while (end < bytes.length && bytes[end] != '\n') end++;
+                String line = new String(bytes, pos, end - pos, StandardCharsets.UTF_8).trim();
+                long offset = mapStart + pos;
+                pos = end + 1;
+
+                if (line.isEmpty() || line.charAt(0) == '#') continue;
+                if (offset == 0 && !Character.isDigit(line.charAt(0))) continue; // header
+
+                Run r = parseLine(line);
+                if (r != null) {
+                    out.add(r);
+                } else if (malformed.incrementAndGet() <= MAX_REPORTED) {
+                    System.err.println("Skipping malformed import line at byte " + offset + ": " + line);
+                }
+            }
+            return out;
+        }
+    }
+
+    static Run parseLine(String line) {
+        String[] f = line.split(",", -1);
+        if (f.length < 3) return null;
+        try {
+            LocalDate date   = LocalDate.parse(f[0].trim());
+            double distance  = Double.parseDouble(f[1].trim());
+            String unit      = f[2].trim().toLowerCase(Locale.ROOT);
+            long duration    = f.length > 3 ? parseDuration(f[3].trim()) : 0;
+            if (!(distance > 0) || Double.isInfinite(distance) || duration < 0) return null;
+
+            return switch (unit) {
+                case "mi", "mile", "miles"    -> Run.ofMiles(date, distance, duration);
+                case "km", "kilometers"       -> Run.ofKm(date, distance, duration);
+                case "lap", "laps" -> {
+                    double trackFeet = f.length > 4 && !f[4].isBlank()
+                            ? Double.parseDouble(f[4].trim()) : Run.standardTrackFeet();
+                    if (distance != Math.rint(distance) || !(trackFeet > 0)) yield null;
+                    yield Run.ofLaps(date, (int) distance, trackFeet, duration);
+                }
+                default -> null;
+            };
+        } catch (DateTimeException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // seconds, mm:ss or hh:mm:ss; empty is 0
+    static long parseDuration(String s) {
+        if (s.isEmpty()) return 0;
+        String[] parts = s.split(":");
+        long total = 0;
+        if (parts.length > 3) throw new NumberFormatException(s);
+        for (String p : parts) total = total * 60 + Long.parseLong(p.trim());
+        return total;
+    }
+}
@@ -0,0 +1,385 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs kept sorted by date in a {@link RunTable}, with a prefix-sum array over
+ * distance and a max segment tree, so any date range resolves in O(log n).
+ * Run counts come from index arithmetic. Appends in date order (the usual case) are
+ * O(log n); back-dated runs shift the columns and rebuild from the insert point.
+ * Every run gets a stable id when it is first stored; rows loaded without one are
+ * numbered in file order. Ids map to their run's date, so a lookup by id is a
+ * binary search plus a scan of that one day.
+ *
+ * <p>The prefix sums, the max tree and the id map are derived from the table on first
+ * use, not at construction, so opening a large history costs only its columns. Every
+ * mutation derives them first, so a lazy build (even one started from an optimistic
+ * read) always sees a table nothing is changing.
+ */
+public class RunIndex {
+
+    private static final RunService.RunStats EMPTY = new RunService.RunStats(0, 0.0, 0.0, 0.0);
+
+    private RunTable table;
+    private int      cap         = 16;
+    private double[] prefixMiles; // prefixMiles[i] = sum of miles[0, i); null until sums()
+    private double[] maxTree;     // leaves at [cap, 2 * cap)
+    private long     nextId      = 1;
+    private IdDays   idDays;      // null until ids()
+    private volatile boolean summed, indexed;
+
+    public RunIndex(List<Run> initial) {
+        this(toTable(initial));
+    }
+
+    // takes ownership of rows if they are already in date order, otherwise sorts a copy
+    public RunIndex(RunTable rows) {
+        assignIds(rows);
+        table = isSorted(rows) ? rows : sortedCopy(rows);
+    }
+
+    // rows already in date order with ids below nextId, as a RunStateSnapshot saves them
+    RunIndex(RunTable sorted, long nextId) {
+        this.table  = sorted;
+        this.nextId = nextId;
+    }
+
+    // the id the next new run gets
+    long nextId() {
+        return nextId;
+    }
+
+    // returns the run as stored, with its id
+    public Run add(Run run) {
+        sums();
+        ids();
+        run = stored(run);
+        int pos = table.upperBound(run.getDate().toEpochDay());
+        boolean tail = pos == table.size();
+        ensureCapacity(table.size() + 1);
+        table.insert(pos, run);
+        idDays.put(run.getId(), table.epochDay(pos));
+
+        if (tail) {
+            prefixMiles[pos + 1] = prefixMiles[pos] + run.getDistanceMiles();
+            updateMax(pos, run.getDistanceMiles());
+        } else {
+            rebuildFrom(pos, table.size());
+        }
+        return run;
+    }
+
+    // bulk insert: one merge pass instead of a column shift per back-dated run; returns the runs as stored
+    public List<Run> addAll(List<Run> batch) {
+        sums();
+        ids();
+        List<Run> stored = new ArrayList<>(batch.size());
+        for (Run r : batch) stored.add(stored(r));
+        if (stored.size() < 2) {
+            for (Run r : stored) add(r);
+            return stored;
+        }
+        RunTable incoming = toTable(stored);
+        if (!isSorted(incoming)) incoming = sortedCopy(incoming);
+
+        if (table.isEmpty() || incoming.epochDay(0) >= table.epochDay(table.size() - 1)) {
+            for (int i = 0; i < incoming.size(); i++) add(incoming.get(i));
+            return stored;
+        }
+        table = merge(table, incoming);
+        build();
+        for (int i = 0; i < incoming.size(); i++) idDays.put(incoming.id(i), incoming.epochDay(i));
+        return stored;
+    }
+
+    public Run find(long id) {
+        int pos = rowOf(id);
+        return pos < 0 ? null : table.get(pos);
+    }
+
+    // returns the removed run, or null if there is none with this id
+    public Run remove(long id) {
+        sums();
+        int pos = rowOf(id);
+        if (pos < 0) return null;
+        Run removed = table.get(pos);
+        table.remove(pos);
+        idDays.remove(id);
+        rebuildFrom(pos, table.size() + 1);
+        return removed;
+    }
+
+    // same date and duration, and the same distance at the 4 decimals runs.csv keeps
+    public boolean contains(Run run) {
+        long day  = run.getDate().toEpochDay();
+        long key  = Math.round(run.getDistanceMiles() * 10_000.0);
+        int  hi   = table.upperBound(day);
+        for (int i = table.lowerBound(day); i < hi; i++) {
+            if (table.durationSeconds(i) == run.getDurationSeconds()
+                    && Math.round(table.miles(i) * 10_000.0) == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public RunService.RunStats stats(LocalDate from, LocalDate to) {
+        int lo = table.lowerBound(from.toEpochDay());
+        int hi = table.upperBound(to.toEpochDay());
+        if (hi <= lo) return EMPTY;
+
+        sums();
+        int    totalRuns  = hi - lo;
+        double totalMiles = prefixMiles[hi] - prefixMiles[lo];
+        return new RunService.RunStats(totalRuns, totalMiles, totalMiles / totalRuns, rangeMax(lo, hi));
+    }
+
+    public int size() {
+        return table.size();
+    }
+
+    public boolean isEmpty() {
+        return table.isEmpty();
+    }
+
+    public Run earliest() {
+        return table.isEmpty() ? null : table.get(0);
+    }
+
+    public Run latest() {
+        return table.isEmpty() ? null : table.get(table.size() - 1);
+    }
+
+    // sorted oldest first; callers must not mutate it
+    public RunTable table() {
+        return table;
+    }
+
+    // oldest first
+    public List<Run> runs() {
+        return table.asList();
+    }
+
+    // gives a new run the next id; runs that already have one keep it
+    private Run stored(Run run) {
+        if (run.getId() == 0) return run.withId(nextId++);
+        nextId = Math.max(nextId, run.getId() + 1);
+        return run;
+    }
+
+    // row holding the run with this id, or -1
+    private int rowOf(long id) {
+        long day = ids().get(id);
+        if (day == IdDays.NONE) return -1;
+        for (int i = table.lowerBound(day), hi = table.upperBound(day); i < hi; i++) {
+            if (table.id(i) == id) return i;
+        }
+        return -1;
+    }
+
+    private void sums() {
+        if (summed) return;
+        synchronized (this) {
+            if (summed) return;
+            build();
+            summed = true;
+        }
+    }
+
+    private IdDays ids() {
+        if (indexed) return idDays;
+        synchronized (this) {
+            if (!indexed) {
+                IdDays map = new IdDays(table.size());
+                for (int i = 0; i < table.size(); i++) map.put(table.id(i), table.epochDay(i));
+                idDays  = map;
+                indexed = true;
+            }
+            return idDays;
+        }
+    }
+
+    private void assignIds(RunTable rows) {
+        for (int i = 0; i < rows.size(); i++) nextId = Math.max(nextId, rows.id(i) + 1);
+        for (int i = 0; i < rows.size(); i++) {
+            if (rows.id(i) == 0) rows.setId(i, nextId++);
+        }
+    }
+
+    private static RunTable toTable(List<Run> runs) {
+        RunTable table = new RunTable(runs.size());
+        for (Run r : runs) table.add(r);
+        return table;
+    }
+
+    // stable: on equal dates existing rows stay ahead of incoming ones, as add() would place them
+    private static RunTable merge(RunTable a, RunTable b) {
+        RunTable out = new RunTable(a.size() + b.size());
+        int i = 0, j = 0;
+        while (i < a.size() || j < b.size()) {
+            boolean takeA = j == b.size() || (i < a.size() && a.epochDay(i) <= b.epochDay(j));
+            RunTable src = takeA ? a : b;
+            int k = takeA ? i++ : j++;
+            out.add(src.epochDay(k), src.miles(k), src.durationSeconds(k), src.inputType(k), src.id(k));
+        }
+        return out;
+    }
+
+    private static boolean isSorted(RunTable rows) {
+        for (int i = 1; i < rows.size(); i++) {
+            if (rows.epochDay(i) < rows.epochDay(i - 1)) return false;
+        }
+        return true;
+    }
+
+    // stable sort on (epochDay, original row) packed into one long
+    private static RunTable sortedCopy(RunTable rows) {
+        int n = rows.size();
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) keys[i] = ((long) rows.epochDay(i) << 32) | i;
+        Arrays.sort(keys);
+
+        RunTable sorted = new RunTable(n);
+        for (long key : keys) {
+            int i = (int) key;
+            sorted.add(rows.epochDay(i), rows.miles(i), rows.durationSeconds(i), rows.inputType(i), rows.id(i));
+        }
+        return sorted;
+    }
+
+    private double rangeMax(int from, int to) {
+        double max = 0.0;
+        for (int l = from + cap, r = to + cap; l < r; l >>>= 1, r >>>= 1) {
+            if ((l & 1) == 1) max = Math.max(max, maxTree[l++]);
+            if ((r & 1) == 1) max = Math.max(max, maxTree[--r]);
+        }
+        return max;
+    }
+
+    private void updateMax(int i, double miles) {
+        int node = i + cap;
+        maxTree[node] = miles;
+        for (node >>>= 1; node > 0; node >>>= 1) {
+            maxTree[node] = Math.max(maxTree[2 * node], maxTree[2 * node + 1]);
+        }
+    }
+
+    // rows from pos shifted: redoes their prefix sums and the max-tree leaves in [pos, end), end past a removed row
+    private void rebuildFrom(int pos, int end) {
+        int size = table.size();
+        for (int i = pos; i < size; i++) {
+            prefixMiles[i + 1] = prefixMiles[i] + table.miles(i);
+        }
+        refreshMax(pos, end);
+    }
+
+    // reloads leaves [from, to), clearing those past the table, then only their ancestors
+    private void refreshMax(int from, int to) {
+        if (from >= to) return;
+        int size = table.size();
+        for (int i = from; i < to; i++) maxTree[cap + i] = i < size ? table.miles(i) : 0.0;
+        for (int l = (from + cap) >>> 1, r = (to - 1 + cap) >>> 1; l > 0; l >>>= 1, r >>>= 1) {
+            for (int node = l; node <= r; node++) {
+                maxTree[node] = Math.max(maxTree[2 * node], maxTree[2 * node + 1]);
+            }
+        }
+    }
+
+    // sizes the arrays for the table and fills both in one pass over the rows
+    private void build() {
+        int size = table.size();
+        while (cap < size) cap <<= 1;
+        prefixMiles = new double[cap + 1];
+        maxTree     = new double[2 * cap];
+        for (int i = 0; i < size; i++) {
+            double m = table.miles(i);
+            prefixMiles[i + 1] = prefixMiles[i] + m;
+            maxTree[cap + i]   = m;
+        }
+        for (int node = cap - 1; node > 0; node--) {
+            maxTree[node] = Math.max(maxTree[2 * node], maxTree[2 * node + 1]);
+        }
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= cap) return;
+        while (cap < needed) cap <<= 1;
+        prefixMiles = Arrays.copyOf(prefixMiles, cap + 1);
+        maxTree     = new double[2 * cap];
+        refreshMax(0, table.size());
+    }
+
+    /** id to epoch day, open addressing with linear probing; ids are never 0. */
+    private static final class IdDays {
+        static final long NONE = Long.MIN_VALUE;
+
+        private long[] ids;
+        private int[]  days;
+        private int    size;
+
+        IdDays(int expected) {
+            int n = 16;
+            while (n * 3 < expected * 4) n <<= 1;
+            ids  = new long[n];
+            days = new int[n];
+        }
+
+        long get(long id) {
+            int i = slot(id);
+            return ids[i] == 0 ? NONE : days[i];
+        }
+
+        void put(long id, int day) {
+            if ((size + 1) * 4 > ids.length * 3) grow();
+            int i = slot(id);
+            if (ids[i] == 0) {
+                ids[i] = id;
+                size++;
+            }
+            days[i] = day;
+        }
+
+        void remove(long id) {
+            int mask = ids.length - 1;
+            int hole = slot(id);
+            if (ids[hole] == 0) return;
+            size--;
+            // backward shift: pull later entries of the probe run into the hole unless that skips their home slot
+            for (int j = (hole + 1) & mask; ids[j] != 0; j = (j + 1) & mask) {
+                int home = hash(ids[j]) & mask;
+                if (((j - home) & mask) >= ((j - hole) & mask)) {
+                    ids[hole]  = ids[j];
+                    days[hole] = days[j];
+                    hole = j;
+                }
+            }
+            ids[hole] = 0;
+        }
+
+        private int slot(long id) {
+            int mask = ids.length - 1;
+            int i = hash(id) & mask;
+            while (ids[i] != 0 && ids[i] != id) i = (i + 1) & mask;
+            return i;
+        }
+
+        private void grow() {
+            long[] oldIds  = ids;
+            int[]  oldDays = days;
+            ids  = new long[oldIds.length * 2];
+            days = new int[oldIds.length * 2];
+            for (int i = 0; i < oldIds.length; i++) {
+                if (oldIds[i] != 0) {
+                    int j = slot(oldIds[i]);
+                    ids[j]  = oldIds[i];
+                    days[j] = oldDays[i];
+                }
+            }
+        }
+
+        private static int hash(long id) {
+            return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32);
+        }
+    }
+}
@@ -0,0 +1,296 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide timers and counters for the hot paths: file load and save, stats
+ * queries, adds and the goal calculations. Everything is {@link LongAdder}-based, so
+ * concurrent callers never contend on one cache line. Off by default: a disabled
+ * {@link Timer#start()} is one volatile read and returns 0, which makes the matching
+ * {@link Timer#stop(long)} a no-op, and counters skip their add.
+ *
+ * <p>Exposed as MXBeans under {@code RunTracker:type=Metrics} and
+ * {@code RunTracker:type=Timer,name=...}, and optionally dumped every few seconds in
+ * Prometheus text format to a local file (written beside it and renamed over it, so
+ * a scraper never reads half a dump). Main turns both on from system properties:
+ *
+ * <pre>
+ *   -Druntracker.metrics=true                   record, visible over JMX only
+ *   -Druntracker.metrics.file=metrics.prom      also dump to this file
+ *   -Druntracker.metrics.period=15              seconds between dumps
+ * </pre>
+ */
+public final class RunMetrics {
+
+    public static final Timer LOAD        = new Timer("load");
+    public static final Timer SAVE        = new Timer("save");
+    public static final Timer GET_STATS   = new Timer("getStats");
+    public static final Timer ADD_RUN     = new Timer("addRun");
+    public static final Timer RUN_GOAL    = new Timer("nextRunGoal");
+    public static final Timer WEEKLY_GOAL = new Timer("weeklyGoal");
+    public static final Timer BREAKDOWN   = new Timer("weeklyGoalBreakdown");
+
+    private static final Timer[] TIMERS = { LOAD, SAVE, GET_STATS, ADD_RUN, RUN_GOAL, WEEKLY_GOAL, BREAKDOWN };
+
+    private static final LongAdder bytesRead    = new LongAdder();
+    private static final LongAdder bytesWritten = new LongAdder();
+    private static final LongAdder runsLoaded   = new LongAdder();
+
+    private static volatile boolean enabled;
+    private static ScheduledExecutorService dumper;
+    private static Path dumpFile;
+
+    private RunMetrics() {}
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    public static void bytesRead(long n) {
+        if (enabled) bytesRead.add(n);
+    }
+
+    public static void bytesWritten(long n) {
+        if (enabled) bytesWritten.add(n);
+    }
+
+    public static void runsLoaded(long n) {
+        if (enabled) runsLoaded.add(n);
+    }
+
+    public static void reset() {
+        for (Timer t : TIMERS) t.reset();
+        bytesRead.reset();
+        bytesWritten.reset();
+        runsLoaded.reset();
+    }
+
+    /** Registers the MBeans (so recording can be switched on later) and reads the system properties above. */
+    public static void configure() {
+        registerMBeans();
+        String file = System.getProperty("runtracker.metrics.file");
+        if (!Boolean.getBoolean("runtracker.metrics") && file == null) return;
+        setEnabled(true);
+        if (file != null) startDump(Path.of(file), Long.getLong("runtracker.metrics.period", 15));
+    }
+
+    public static synchronized void registerMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName("RunTracker:type=Metrics");
+            if (server.isRegistered(name)) return;
+            server.registerMBean(new Control(), name);
+            for (Timer t : TIMERS) server.registerMBean(t, new ObjectName("RunTracker:type=Timer,name=" + t.name));
+        } catch (JMException e) {
+            System.err.println("Error registering metrics MBeans: " + e.getMessage());
+        }
+    }
+
+    /** Writes {@link #prometheus()} to {@code file} every {@code periodSeconds} on a daemon thread. */
+    public static synchronized void startDump(Path file, long periodSeconds) {
+        stopDump();
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        dumper.scheduleAtFixedRate(() -> dump(file), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+        dumpFile = file;
+    }
+
+    // writes a last dump so short-lived runs still leave one behind
+    public static synchronized void stopDump() {
+        if (dumper == null) return;
+        dumper.shutdown();
+        try {
+            dumper.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        dump(dumpFile);
+        dumper   = null;
+        dumpFile = null;
+    }
+
+    public static void dump(Path file) {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.writeString(tmp, prometheus(), StandardCharsets.UTF_8);
+            RunRepository.replaceAtomically(tmp, file);
+        } catch (IOException e) {
+            System.err.println("Error writing metrics: " + e.getMessage());
+            RunRepository.deleteQuietly(tmp);
+        }
+    }
+
+    /** Prometheus text exposition format: one histogram per timer, then the counters. */
+    public static String prometheus() {
+        StringBuilder sb = new StringBuilder(4_096);
+        sb.append("# HELP runtracker_call_seconds Latency of instrumented calls.\n")
+          .append("# TYPE runtracker_call_seconds histogram\n");
+        for (Timer t : TIMERS) t.appendPrometheus(sb);
+        counter(sb, "runtracker_bytes_read_total", "Bytes read from run files and logs.", bytesRead.sum());
+        counter(sb, "runtracker_bytes_written_total", "Bytes written to run files and logs.", bytesWritten.sum());
+        counter(sb, "runtracker_runs_loaded_total", "Runs loaded from disk.", runsLoaded.sum());
+        return sb.toString();
+    }
+
+    private static void counter(StringBuilder sb, String name, String help, long value) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n')
+          .append("# TYPE ").append(name).append(" counter\n")
+          .append(name).append(' ').append(value).append('\n');
+    }
+
+    public interface MetricsMXBean {
+        boolean isEnabled();
+        void setEnabled(boolean enabled);
+        long getBytesRead();
+        long getBytesWritten();
+        long getRunsLoaded();
+        void reset();
+    }
+
+    public interface TimerMXBean {
+        long getCount();
+        double getMeanMillis();
+        double getP50Millis();
+        double getP99Millis();
+        double getMaxMillis();
+    }
+
+    private static final class Control implements MetricsMXBean {
+        @Override public boolean isEnabled()            { return RunMetrics.isEnabled(); }
+        @Override public void setEnabled(boolean on)    { RunMetrics.setEnabled(on); }
+        @Override public long getBytesRead()            { return bytesRead.sum(); }
+        @Override public long getBytesWritten()         { return bytesWritten.sum(); }
+        @Override public long getRunsLoaded()           { return runsLoaded.sum(); }
+        @Override public void reset()                   { RunMetrics.reset(); }
+    }
+
+    /**
+     * Call count, total time and a latency histogram with 4 buckets per power of two
+     * of nanoseconds (bucket bounds within 19%, up to ~2^40 ns, about 18 minutes).
+     */
+    public static final class Timer implements TimerMXBean {
+
+        private static final int SUB_BITS = 2;
+        private static final int BUCKETS  = 41 << SUB_BITS;
+
+        // Prometheus buckets at powers of two from ~1 µs to ~69 s
+        private static final int LE_MIN_EXP = 10;
+        private static final int LE_MAX_EXP = 36;
+
+        final String name;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+        private final AtomicLong max = new AtomicLong();
+
+        Timer(String name) {
+            this.name = name;
+            for (int i = 0; i < BUCKETS; i++) buckets[i] = new LongAdder();
+        }
+
+        /** A start time to hand to {@link #stop}, or 0 if metrics are off. */
+        public long start() {
+            return enabled ? System.nanoTime() : 0;
+        }
+
+        public void stop(long start) {
+            if (start == 0) return;
+            long elapsed = Math.max(1, System.nanoTime() - start);
+            count.increment();
+            nanos.add(elapsed);
+            buckets[bucket(elapsed)].increment();
+            if (elapsed > max.get()) max.accumulateAndGet(elapsed, Math::max);
+        }
+
+        void reset() {
+            count.reset();
+            nanos.reset();
+            for (LongAdder b : buckets) b.reset();
+            max.set(0);
+        }
+
+        @Override public long getCount()        { return count.sum(); }
+        @Override public double getMaxMillis()  { return max.get() / 1e6; }
+        @Override public double getP50Millis()  { return quantileNanos(0.50) / 1e6; }
+        @Override public double getP99Millis()  { return quantileNanos(0.99) / 1e6; }
+
+        @Override
+        public double getMeanMillis() {
+            long n = count.sum();
+            return n == 0 ? 0.0 : nanos.sum() / 1e6 / n;
+        }
+
+        // upper bound of the bucket holding the nearest-rank quantile, capped at the max seen
+        long quantileNanos(double p) {
+            long[] snap = snapshot();
+            long total = 0;
+            for (long c : snap) total += c;
+            if (total == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(p * total)), seen = 0;
+            for (int i = 0; i < snap.length; i++) {
+                seen += snap[i];
+                if (seen >= rank) return Math.min(upperBound(i), max.get());
+            }
+            return max.get();
+        }
+
+        void appendPrometheus(StringBuilder sb) {
+            long[] snap = snapshot();
+            long cumulative = 0;
+            int i = 0;
+            for (int exp = LE_MIN_EXP; exp <= LE_MAX_EXP; exp++) {
+                for (; i < BUCKETS && upperBound(i) <= 1L << exp; i++) cumulative += snap[i];
+                sb.append("runtracker_call_seconds_bucket{op=\"").append(name).append("\",le=\"")
+                  .append(String.format(Locale.ROOT, "%.9g", (1L << exp) / 1e9)).append("\"} ")
+                  .append(cumulative).append('\n');
+            }
+            for (; i < BUCKETS; i++) cumulative += snap[i];
+            sb.append("runtracker_call_seconds_bucket{op=\"").append(name).append("\",le=\"+Inf\"} ")
+              .append(cumulative).append('\n');
+            sb.append("runtracker_call_seconds_sum{op=\"").append(name).append("\"} ")
+              .append(String.format(Locale.ROOT, "%.9f", nanos.sum() / 1e9)).append('\n');
+            sb.append("runtracker_call_seconds_count{op=\"").append(name).append("\"} ")
+              .append(cumulative).append('\n');
+        }
+
+        private long[] snapshot() {
+            long[] snap = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) snap[i] = buckets[i].sum();
+            return snap;
+        }
+
+        // exponent of the top bit, then the next SUB_BITS bits below it
+        static int bucket(long nanos) {
+            int exp = 63 - Long.numberOfLeadingZeros(nanos);
+            int sub = exp < SUB_BITS ? (int) (nanos << (SUB_BITS - exp)) : (int) (nanos >>> (exp - SUB_BITS));
+            return Math.min(BUCKETS - 1, (exp << SUB_BITS) | (sub & ((1 << SUB_BITS) - 1)));
+        }
+
+        // smallest value of the next bucket, i.e. an exclusive upper bound
+        static long upperBound(int bucket) {
+            int exp = bucket >> SUB_BITS, sub = bucket & ((1 << SUB_BITS) - 1);
+            long lower = exp < SUB_BITS ? ((long) ((1 << SUB_BITS) | sub)) >> (SUB_BITS - exp)
+                                        : ((long) ((1 << SUB_BITS) | sub)) << (exp - SUB_BITS);
+            long width = exp < SUB_BITS ? 1 : 1L << (exp - SUB_BITS);
+            return lower + width;
+        }
+    }
+}
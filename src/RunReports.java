@@ -0,0 +1,276 @@
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * Cross-athlete reports over an {@link AthleteRunService}. The athlete list is split
+ * into partitions that fork-join tasks reduce in parallel: each partition folds its
+ * athletes into one mutable accumulator, and sibling accumulators are merged pairwise
+ * on the way back up, so no per-run or per-athlete lists are built. Totals follow
+ * {@link RunService#getStats} and paces follow {@link RunService#paceMinPerMile}.
+ */
+public class RunReports {
+
+    public enum Period {
+        WEEK, MONTH, YEAR;
+
+        // weeks start on Sunday, as RunService.getWeekStart does
+        LocalDate start(LocalDate date) {
+            return switch (this) {
+                case WEEK  -> date.with(TemporalAdjusters.previousOrSame(DayOfWeek.SUNDAY));
+                case MONTH -> date.withDayOfMonth(1);
+                case YEAR  -> date.withDayOfYear(1);
+            };
+        }
+
+        LocalDate next(LocalDate start) {
+            return switch (this) {
+                case WEEK  -> start.plusWeeks(1);
+                case MONTH -> start.plusMonths(1);
+                case YEAR  -> start.plusYears(1);
+            };
+        }
+    }
+
+    public record LeaderboardEntry(int rank, String athleteId, RunService.RunStats week) {}
+
+    public record PeriodTotal(LocalDate start, LocalDate end, int athletes, RunService.RunStats stats) {}
+
+    /**
+     * Runs per pace bin: {@code counts[i]} holds paces in [i, i + 1) * binMinutes
+     * min/mile; {@code slower} is everything past the last bin. Untimed runs have no
+     * pace and are only counted.
+     */
+    public record PaceDistribution(double binMinutes, long[] counts, long slower, long untimed) {
+        public long timedRuns() {
+            long n = slower;
+            for (long c : counts) n += c;
+            return n;
+        }
+
+        // upper edge of the bin holding the p-th timed run, or +Inf if it is past the last bin
+        public double percentile(double p) {
+            long total = timedRuns();
+            if (total == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(p * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return (i + 1) * binMinutes;
+            }
+            return Double.POSITIVE_INFINITY;
+        }
+    }
+
+    /** Count, total and max miles; merges the way disjoint getStats ranges combine. */
+    public static final class StatsAccumulator {
+        private int    runs;
+        private double miles;
+        private double maxMiles;
+
+        public void add(RunService.RunStats s) {
+            runs    += s.totalRuns();
+            miles   += s.totalMiles();
+            maxMiles = Math.max(maxMiles, s.highestDay());
+        }
+
+        public StatsAccumulator merge(StatsAccumulator other) {
+            runs    += other.runs;
+            miles   += other.miles;
+            maxMiles = Math.max(maxMiles, other.maxMiles);
+            return this;
+        }
+
+        public RunService.RunStats toStats() {
+            return new RunService.RunStats(runs, miles, runs == 0 ? 0.0 : miles / runs, maxMiles);
+        }
+    }
+
+    // per-period accumulators plus how many athletes ran in each period
+    private static final class PeriodTotals {
+        final StatsAccumulator[] stats;
+        final int[] athletes;
+
+        PeriodTotals(int n) {
+            stats    = new StatsAccumulator[n];
+            athletes = new int[n];
+            for (int i = 0; i < n; i++) stats[i] = new StatsAccumulator();
+        }
+
+        PeriodTotals merge(PeriodTotals other) {
+            for (int i = 0; i < stats.length; i++) {
+                stats[i].merge(other.stats[i]);
+                athletes[i] += other.athletes[i];
+            }
+            return this;
+        }
+    }
+
+    private static final int    PARTITION_ATHLETES = 16;
+    private static final double DEFAULT_BIN_MINUTES = 0.25;
+    private static final double MAX_BINNED_PACE     = 30.0;
+
+    private static final Comparator<LeaderboardEntry> BY_MILES =
+            Comparator.comparingDouble((LeaderboardEntry e) -> e.week().totalMiles())
+                      .thenComparing(LeaderboardEntry::athleteId, Comparator.reverseOrder());
+
+    private final AthleteRunService athletes;
+    private final ForkJoinPool pool;
+
+    public RunReports(AthleteRunService athletes) {
+        this(athletes, ForkJoinPool.commonPool());
+    }
+
+    public RunReports(AthleteRunService athletes, ForkJoinPool pool) {
+        this.athletes = athletes;
+        this.pool     = pool;
+    }
+
+    /** The {@code top} athletes by miles in the Sunday-start week containing {@code day}. */
+    public List<LeaderboardEntry> weeklyLeaderboard(LocalDate day, int top) {
+        LocalDate from = Period.WEEK.start(day);
+        LocalDate to   = from.plusDays(6);
+
+        // min-heap of the best `top` so far; ties rank by athlete id
+        PriorityQueue<LeaderboardEntry> best = reduce(
+                () -> new PriorityQueue<>(BY_MILES),
+                (heap, id) -> {
+                    RunService.RunStats week = athletes.forAthlete(id).getStats(from, to);
+                    if (week.totalRuns() > 0) offer(heap, new LeaderboardEntry(0, id, week), top);
+                },
+                (a, b) -> {
+                    for (LeaderboardEntry e : b) offer(a, e, top);
+                    return a;
+                });
+
+        List<LeaderboardEntry> ranked = new ArrayList<>(best);
+        ranked.sort(BY_MILES.reversed());
+        for (int i = 0; i < ranked.size(); i++) {
+            LeaderboardEntry e = ranked.get(i);
+            ranked.set(i, new LeaderboardEntry(i + 1, e.athleteId(), e.week()));
+        }
+        return ranked;
+    }
+
+    /** Totals over every athlete for each period overlapping [from, to], clipped to it. */
+    public List<PeriodTotal> totalsByPeriod(Period period, LocalDate from, LocalDate to) {
+        List<LocalDate[]> ranges = new ArrayList<>();
+        for (LocalDate s = period.start(from); !s.isAfter(to); s = period.next(s)) {
+            ranges.add(new LocalDate[] {max(s, from), min(period.next(s).minusDays(1), to)});
+        }
+        int n = ranges.size();
+
+        PeriodTotals merged = reduce(
+                () -> new PeriodTotals(n),
+                (totals, id) -> {
+                    RunService service = athletes.forAthlete(id);
+                    for (int i = 0; i < n; i++) {
+                        RunService.RunStats s = service.getStats(ranges.get(i)[0], ranges.get(i)[1]);
+                        if (s.totalRuns() == 0) continue;
+                        totals.stats[i].add(s);
+                        totals.athletes[i]++;
+                    }
+                },
+                PeriodTotals::merge);
+
+        List<PeriodTotal> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            out.add(new PeriodTotal(ranges.get(i)[0], ranges.get(i)[1], merged.athletes[i], merged.stats[i].toStats()));
+        }
+        return out;
+    }
+
+    public PaceDistribution paceDistribution(LocalDate from, LocalDate to) {
+        return paceDistribution(from, to, DEFAULT_BIN_MINUTES);
+    }
+
+    /** Pace histogram over every athlete's runs in [from, to], bins of {@code binMinutes} up to 30 min/mile. */
+    public PaceDistribution paceDistribution(LocalDate from, LocalDate to, double binMinutes) {
+        if (!(binMinutes > 0)) throw new IllegalArgumentException("binMinutes must be > 0");
+        int bins = (int) Math.ceil(MAX_BINNED_PACE / binMinutes);
+
+        // counts[0, bins) per bin, then slower, then untimed
+        long[] counts = reduce(
+                () -> new long[bins + 2],
+                (c, id) -> athletes.forAthlete(id).forEachRun(from, to, (day, miles, seconds) -> {
+                    double pace = RunService.paceMinPerMile(miles, seconds);
+                    if (pace == 0)                      c[bins + 1]++;
+                    else if (pace >= bins * binMinutes) c[bins]++;
+                    else                                c[(int) (pace / binMinutes)]++;
+                }),
+                (a, b) -> {
+                    for (int i = 0; i < a.length; i++) a[i] += b[i];
+                    return a;
+                });
+
+        long[] binned = new long[bins];
+        System.arraycopy(counts, 0, binned, 0, bins);
+        return new PaceDistribution(binMinutes, binned, counts[bins], counts[bins + 1]);
+    }
+
+    // fork-join reduction over athlete ids: fold each partition into a fresh accumulator, merge siblings
+    private <A> A reduce(Supplier<A> identity, BiConsumer<A, String> fold, BinaryOperator<A> merge) {
+        String[] ids = athletes.athleteIds().toArray(new String[0]);
+        return pool.invoke(new Partition<>(ids, 0, ids.length, identity, fold, merge));
+    }
+
+    private static final class Partition<A> extends RecursiveTask<A> {
+        private static final long serialVersionUID = 1L;
+        private final String[] ids;
+        private final int from, to;
+        private final transient Supplier<A> identity;
+        private final transient BiConsumer<A, String> fold;
+        private final transient BinaryOperator<A> merge;
+
+        Partition(String[] ids, int from, int to, Supplier<A> identity,
+                  BiConsumer<A, String> fold, BinaryOperator<A> merge) {
+            this.ids = ids;
+            this.from = from;
+            this.to = to;
+            this.identity = identity;
+            this.fold = fold;
+            this.merge = merge;
+        }
+
+        @Override
+        protected A compute() {
+            if (to - from > PARTITION_ATHLETES) {
+                int mid = (from + to) >>> 1;
+                Partition<A> right = new Partition<>(ids, mid, to, identity, fold, merge);
+                right.fork();
+                A left = new Partition<>(ids, from, mid, identity, fold, merge).compute();
+                return merge.apply(left, right.join());
+            }
+            A acc = identity.get();
+            for (int i = from; i < to; i++) fold.accept(acc, ids[i]);
+            return acc;
+        }
+    }
+
+    private static void offer(PriorityQueue<LeaderboardEntry> heap, LeaderboardEntry e, int top) {
+        if (top <= 0) return;
+        if (heap.size() < top) {
+            heap.add(e);
+        } else if (BY_MILES.compare(e, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(e);
+        }
+    }
+
+    private static LocalDate max(LocalDate a, LocalDate b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    private static LocalDate min(LocalDate a, LocalDate b) {
+        return a.isBefore(b) ? a : b;
+    }
+}
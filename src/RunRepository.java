@@ -1,68 +1,282 @@
 import java.io.*;
-import java.time.LocalDate;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 
-public class RunRepository {
+public class RunRepository implements Closeable {
 
     private static final DateTimeFormatter DATE_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final String HEADER = "# date,distanceMiles,durationSeconds,inputType,id";
+    static final int DEFAULT_COMPACT_EVERY = 10_000;
+
     private final String filePath;
+    private final boolean fsync;
+    private final int compactEvery;
+
+    // lazily opened append handle, kept open between addRun calls
+    private FileOutputStream logStream;
+    private Writer logWriter;
+    private int appendsSinceCompaction;
+    protected boolean rewritePending; // edits this format can only persist by rewriting the file
 
     public RunRepository(String filePath) {
-        this.filePath = filePath;
+        this(filePath, false, DEFAULT_COMPACT_EVERY);
+    }
+
+    /**
+     * @param fsync        force every appended batch to disk before returning
+     * @param compactEvery rewrite the file as a clean snapshot after this many appends (0 = never)
+     */
+    public RunRepository(String filePath, boolean fsync, int compactEvery) {
+        this.filePath     = filePath;
+        this.fsync        = fsync;
+        this.compactEvery = compactEvery;
+    }
+
+    public Path path() {
+        return Path.of(filePath);
+    }
+
+    public void append(Run run) {
+        appendAll(List.of(run));
+    }
+
+    public void appendAll(List<Run> runs) {
+        try {
+            appendBatch(runs);
+        } catch (IOException e) {
+            System.err.println("Error appending runs: " + e.getMessage());
+        }
+    }
+
+    // one buffered write (and at most one fsync) per batch, so bulk ingest stays linear
+    public void appendBatch(List<Run> runs) throws IOException {
+        if (runs.isEmpty()) return;
+        Writer w = openLog();
+        long before = RunMetrics.isEnabled() ? logStream.getChannel().position() : 0;
+        for (Run r : runs) writeLine(w, r);
+        w.flush();
+        if (RunMetrics.isEnabled()) RunMetrics.bytesWritten(logStream.getChannel().position() - before);
+        if (fsync) logStream.getFD().sync();
+        appendsSinceCompaction += runs.size();
+    }
+
+    // a plain file has no edit log: mark it for rewriting by the next compaction
+    public void appendEdits(List<RunEdit> edits) throws IOException {
+        if (!edits.isEmpty()) rewritePending = true;
+    }
+
+    public boolean needsCompaction() {
+        return rewritePending || compactEvery > 0 && appendsSinceCompaction >= compactEvery;
     }
 
+    public void save(RunTable table) {
+        save(table.asList());
+    }
+
+    // full snapshot rewrite; the old file stays whole until the new one is complete on disk
     public void save(List<Run> runs) {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(filePath))) {
-            pw.println("# date,distanceMiles,durationSeconds,inputType");
-            for (Run r : runs) {
-                pw.printf("%s,%.4f,%d,%s%n",
-                        r.getDate().format(DATE_FMT),
-                        r.getDistanceMiles(),
-                        r.getDurationSeconds(),
-                        r.getInputType().name()
-                );
+        closeLog();
+        if (writeSnapshot(runs, null)) {
+            appendsSinceCompaction = 0;
+            rewritePending = false;
+        }
+    }
+
+    // brings the file up to date with the caller's runs if appends are held elsewhere; a no-op here
+    public void checkpoint(RunTable table) {
+    }
+
+    /**
+     * Writes {@code runs} beside the file, forces them to disk and renames over it,
+     * so a crash or a full disk mid-save leaves the previous file in place. Returns
+     * false (after reporting) if the old file was kept.
+     */
+    protected boolean writeSnapshot(List<Run> runs, String extraHeader) {
+        long start = RunMetrics.SAVE.start();
+        try {
+            return writeSnapshotFile(runs, extraHeader);
+        } finally {
+            RunMetrics.SAVE.stop(start);
+        }
+    }
+
+    private boolean writeSnapshotFile(List<Run> runs, String extraHeader) {
+        Path target = Path.of(filePath);
+        Path tmp    = Path.of(filePath + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp.toFile());
+             Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            w.write(HEADER);
+            w.write(System.lineSeparator());
+            if (extraHeader != null) {
+                w.write(extraHeader);
+                w.write(System.lineSeparator());
             }
+            for (Run r : runs) writeLine(w, r);
+            w.flush();
+            if (RunMetrics.isEnabled()) RunMetrics.bytesWritten(out.getChannel().position());
+            out.getFD().sync(); // before the rename, or a crash can leave an empty file under the old name
         } catch (IOException e) {
             System.err.println("Error saving runs: " + e.getMessage());
+            deleteQuietly(tmp);
+            return false;
+        }
+        try {
+            replaceAtomically(tmp, target);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error saving runs: " + e.getMessage());
+            deleteQuietly(tmp);
+            return false;
         }
     }
 
-    public List<Run> load() {
-        List<Run> runs = new ArrayList<>();
-        File file = new File(filePath);
+    // rename over the target (atomically where the file system allows), then persist the rename
+    static void replaceAtomically(Path tmp, Path target) throws IOException {
+        try {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        syncDirectory(target);
+    }
 
-        if (!file.exists()) {
-            return runs;
+    static void syncDirectory(Path file) {
+        Path dir = file.toAbsolutePath().getParent();
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException e) {
+            // directories can't be opened for sync on every platform; the rename is still atomic
         }
+    }
+
+    static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // best effort; a stale .tmp is overwritten by the next save
+        }
+    }
 
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-            String line;
-            int lineNum = 0;
+    // columnar load used by RunService; timed here, formats override readTable()
+    public RunTable loadTable() {
+        long start = RunMetrics.LOAD.start();
+        RunTable table = readTable();
+        RunMetrics.runsLoaded(table.size());
+        RunMetrics.LOAD.stop(start);
+        return table;
+    }
+
+    // rows go straight from bytes into the table
+    protected RunTable readTable() {
+        RunTable table = new RunTable();
+        Path file = Path.of(filePath);
+        if (!Files.exists(file)) return table;
+
+        try {
+            if (RunMetrics.isEnabled()) RunMetrics.bytesRead(Files.size(file));
+            new RunCsvParser().parse(file, table);
+        } catch (IOException e) {
+            System.err.println("Error loading runs: " + e.getMessage());
+        }
+        return table;
+    }
 
-            while ((line = br.readLine()) != null) {
-                lineNum++;
-                if (line.isBlank() || line.startsWith("#")) continue;
+    public List<Run> load() {
+        return new ArrayList<>(loadTable().asList());
+    }
 
-                String[] parts = line.split(",");
-                if (parts.length < 4) {
-                    System.err.println("Skipping malformed line " + lineNum);
-                    continue;
-                }
+    // A RunStateSnapshot of the loaded table holds while stateBase() is unchanged and
+    // stateLog() still starts with the bytes the table was loaded from; loadTail() reads the rest.
 
-                LocalDate date = LocalDate.parse(parts[0].trim(), DATE_FMT);
-                double distanceMiles = Double.parseDouble(parts[1].trim());
-                long duration = Long.parseLong(parts[2].trim());
-                Run.InputType type = Run.InputType.valueOf(parts[3].trim());
+    // the file that must not change under a state snapshot; null if there is none
+    public Path stateBase() {
+        return null;
+    }
 
-                runs.add(Run.ofMiles(date, distanceMiles, duration));
-            }
+    // the append-only file a state snapshot covers a prefix of; null if there is none
+    public Path stateLog() {
+        return path();
+    }
 
+    // how much of stateLog() the loaded table reflects
+    public long stateLogLength() throws IOException {
+        return Files.size(path());
+    }
+
+    /**
+     * Applies what stateLog() holds past byte {@code from} to {@code table}, which was
+     * loaded from the bytes before it, and leaves the repository as loadTable() would.
+     * Returns {@code table} itself if the tail held only adds, which are appended to it.
+     */
+    public RunTable loadTail(RunTable table, long from) {
+        Path file = Path.of(filePath);
+        try {
+            if (Files.size(file) <= from) return table;
+            if (RunMetrics.isEnabled()) RunMetrics.bytesRead(Files.size(file) - from);
+            new RunCsvParser().parse(file, from, table);
         } catch (IOException e) {
             System.err.println("Error loading runs: " + e.getMessage());
         }
+        return table;
+    }
+
+    @Override
+    public void close() {
+        closeLog();
+    }
+
+    private Writer openLog() throws IOException {
+        if (logWriter != null) return logWriter;
+
+        File file = new File(filePath);
+        boolean fresh = !file.exists() || file.length() == 0;
+        boolean needsNewline = !fresh && !endsWithNewline(file);
+
+        logStream = new FileOutputStream(file, true);
+        logWriter = new BufferedWriter(new OutputStreamWriter(logStream, StandardCharsets.UTF_8));
+        if (fresh) {
+            logWriter.write(HEADER);
+            logWriter.write(System.lineSeparator());
+        } else if (needsNewline) {
+            // a torn last line from an earlier crash must not swallow the next record
+            logWriter.write(System.lineSeparator());
+        }
+        return logWriter;
+    }
+
+    private void closeLog() {
+        if (logWriter == null) return;
+        try {
+            logWriter.close();
+        } catch (IOException e) {
+            System.err.println("Error closing run log: " + e.getMessage());
+        }
+        logWriter = null;
+        logStream = null;
+    }
+
+    private static boolean endsWithNewline(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(raf.length() - 1);
+            return raf.read() == '\n';
+        }
+    }
 
-        return runs;
+    private static void writeLine(Writer w, Run r) throws IOException {
+        w.write(String.format("%s,%.4f,%d,%s,%d%n",
+                r.getDate().format(DATE_FMT),
+                r.getDistanceMiles(),
+                r.getDurationSeconds(),
+                r.getInputType().name(),
+                r.getId()
+        ));
     }
 }
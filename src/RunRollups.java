@@ -0,0 +1,258 @@
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Day, week (Sunday start, as {@link RunService#getWeekStart}), month and year
+ * rollups of run count, total and max miles, and total duration. A range query is
+ * decomposed into the coarsest buckets that fit inside it: whole years, then whole
+ * months at either end of those, then whole weeks, then single days, so a multi-year
+ * range reads a few dozen buckets at most. Each tier only holds buckets that have runs.
+ * They are saved with the table in the {@link RunStateSnapshot} rather than rebuilt
+ * on every start. Not synchronized; {@link RunService} updates them under its write lock.
+ */
+public class RunRollups {
+
+    public enum Tier { DAY, WEEK, MONTH, YEAR }
+
+    public record Totals(int runs, double totalMiles, double maxMiles, long durationSeconds) {
+        public RunService.RunStats toStats() {
+            return new RunService.RunStats(runs, totalMiles, runs == 0 ? 0.0 : totalMiles / runs, maxMiles);
+        }
+    }
+
+    private static final Tier[] TIERS       = Tier.values();
+    private static final int    BUCKET_BYTES = 32;
+    private static final int    SUNDAY_EPOCH_DAY = 3; // 1970-01-04
+
+    private final Buckets[] tiers = new Buckets[TIERS.length];
+    private final int[] lastKeys = new int[TIERS.length]; // keys of lastDay: runs cluster by day
+    private int lastDay = Integer.MIN_VALUE;
+
+    public RunRollups() {
+        for (int t = 0; t < tiers.length; t++) tiers[t] = new Buckets(16);
+    }
+
+    public static RunRollups build(RunTable table) {
+        RunRollups r = new RunRollups();
+        for (int i = 0; i < table.size(); i++) r.add(table.epochDay(i), table.miles(i), table.durationSeconds(i));
+        return r;
+    }
+
+    public void onAdd(Run run) {
+        add(Math.toIntExact(run.getDate().toEpochDay()), run.getDistanceMiles(), run.getDurationSeconds());
+    }
+
+    public void add(int epochDay, double miles, long durationSeconds) {
+        if (epochDay != lastDay) {
+            for (Tier t : TIERS) lastKeys[t.ordinal()] = key(t, epochDay);
+            lastDay = epochDay;
+        }
+        for (int t = 0; t < tiers.length; t++) tiers[t].add(lastKeys[t], miles, durationSeconds);
+    }
+
+    /**
+     * Call after the run is out of {@code index}. Counts, miles and maxima of the
+     * touched buckets are re-read from the index, so repeated edits don't drift;
+     * duration, which the index doesn't sum, is subtracted. Emptied buckets go away.
+     */
+    public void onRemove(Run run, RunIndex index) {
+        int day = Math.toIntExact(run.getDate().toEpochDay());
+        for (Tier t : TIERS) {
+            int k = key(t, day);
+            RunService.RunStats s = index.stats(LocalDate.ofEpochDay(startDay(t, k)),
+                                                LocalDate.ofEpochDay(startDay(t, k + 1) - 1));
+            tiers[t.ordinal()].replace(k, s.totalRuns(), s.totalMiles(), s.highestDay(), run.getDurationSeconds());
+        }
+    }
+
+    public Totals totals(LocalDate from, LocalDate to) {
+        Acc acc = new Acc();
+        Buckets days = tiers[Tier.DAY.ordinal()];
+        if (days.size == 0) return acc.totals();
+
+        // clip to the data so open-ended ranges (LocalDate.MIN) stay in int keys
+        long lo = Math.max(from.toEpochDay(), days.keys[0]);
+        long hi = Math.min(to.toEpochDay(), days.keys[days.size - 1]);
+        cover((int) lo, (int) hi, TIERS.length - 1, acc);
+        return acc.totals();
+    }
+
+    int serializedBytes() {
+        int bytes = 0;
+        for (Buckets b : tiers) bytes += 4 + b.size * BUCKET_BYTES;
+        return bytes;
+    }
+
+    // per tier: the bucket count, then each column as one bulk copy (RunStateSnapshot)
+    void put(ByteBuffer out) {
+        for (Buckets b : tiers) {
+            out.putInt(b.size);
+            int p = out.position(), n = b.size;
+            out.asIntBuffer().put(b.keys, 0, n).put(b.count, 0, n);
+            p += 8 * n;
+            out.position(p).asDoubleBuffer().put(b.miles, 0, n).put(b.max, 0, n);
+            p += 16 * n;
+            out.position(p).asLongBuffer().put(b.duration, 0, n);
+            out.position(p + 8 * n);
+        }
+    }
+
+    // null if the buckets don't fit in what is left of the buffer
+    static RunRollups get(ByteBuffer in) {
+        RunRollups r = new RunRollups();
+        for (int t = 0; t < TIERS.length; t++) {
+            if (in.remaining() < 4) return null;
+            int n = in.getInt();
+            if (n < 0 || (long) n * BUCKET_BYTES > in.remaining()) return null;
+            Buckets b = r.tiers[t] = new Buckets(n);
+            int p = in.position();
+            in.asIntBuffer().get(b.keys, 0, n).get(b.count, 0, n);
+            p += 8 * n;
+            in.position(p).asDoubleBuffer().get(b.miles, 0, n).get(b.max, 0, n);
+            p += 16 * n;
+            in.position(p).asLongBuffer().get(b.duration, 0, n);
+            in.position(p + 8 * n);
+            b.size = n;
+        }
+        return r;
+    }
+
+    // take the whole buckets of this tier inside [from, to], then recurse one tier finer on both leftovers
+    private void cover(int from, int to, int tier, Acc acc) {
+        if (from > to) return;
+        Tier t = TIERS[tier];
+        int first = key(t, from), last = key(t, to);
+        if (startDay(t, first) < from)      first++;
+        if (startDay(t, last + 1) - 1 > to) last--;
+        if (first > last) {
+            cover(from, to, tier - 1, acc);
+            return;
+        }
+        tiers[tier].sum(first, last, acc);
+        if (tier == 0) return;
+        cover(from, startDay(t, first) - 1, tier - 1, acc);
+        cover(startDay(t, last + 1), to, tier - 1, acc);
+    }
+
+    static int key(Tier tier, int epochDay) {
+        return switch (tier) {
+            case DAY  -> epochDay;
+            case WEEK -> Math.floorDiv(epochDay - SUNDAY_EPOCH_DAY, 7);
+            case MONTH -> {
+                LocalDate d = LocalDate.ofEpochDay(epochDay);
+                yield d.getYear() * 12 + d.getMonthValue() - 1;
+            }
+            case YEAR -> LocalDate.ofEpochDay(epochDay).getYear();
+        };
+    }
+
+    static int startDay(Tier tier, int key) {
+        return switch (tier) {
+            case DAY   -> key;
+            case WEEK  -> key * 7 + SUNDAY_EPOCH_DAY;
+            case MONTH -> (int) LocalDate.of(Math.floorDiv(key, 12), Math.floorMod(key, 12) + 1, 1).toEpochDay();
+            case YEAR  -> (int) LocalDate.of(key, 1, 1).toEpochDay();
+        };
+    }
+
+    private static final class Acc {
+        int runs;
+        double miles, max;
+        long duration;
+
+        Totals totals() {
+            return new Totals(runs, miles, max, duration);
+        }
+    }
+
+    /** Sparse bucket columns sorted by key; appends in key order are O(1). */
+    private static final class Buckets {
+        int      size;
+        int[]    keys;
+        int[]    count;
+        double[] miles;
+        double[] max;
+        long[]   duration;
+
+        Buckets(int capacity) {
+            capacity = Math.max(1, capacity);
+            keys     = new int[capacity];
+            count    = new int[capacity];
+            miles    = new double[capacity];
+            max      = new double[capacity];
+            duration = new long[capacity];
+        }
+
+        void add(int key, double m, long d) {
+            int i = size > 0 && keys[size - 1] == key ? size - 1 : lowerBound(key);
+            if (i == size || keys[i] != key) insert(i, key);
+            count[i]++;
+            miles[i]    += m;
+            max[i]       = Math.max(max[i], m);
+            duration[i] += d;
+        }
+
+        void sum(int fromKey, int toKey, Acc acc) {
+            for (int i = lowerBound(fromKey); i < size && keys[i] <= toKey; i++) {
+                acc.runs     += count[i];
+                acc.miles    += miles[i];
+                acc.max       = Math.max(acc.max, max[i]);
+                acc.duration += duration[i];
+            }
+        }
+
+        // sets a bucket's count, miles and max, takes d off its duration, and drops it once empty
+        void replace(int key, int n, double m, double mx, long d) {
+            int i = lowerBound(key);
+            if (i == size || keys[i] != key) return;
+            if (n == 0) {
+                int tail = size - i - 1;
+                System.arraycopy(keys,     i + 1, keys,     i, tail);
+                System.arraycopy(count,    i + 1, count,    i, tail);
+                System.arraycopy(miles,    i + 1, miles,    i, tail);
+                System.arraycopy(max,      i + 1, max,      i, tail);
+                System.arraycopy(duration, i + 1, duration, i, tail);
+                size--;
+                return;
+            }
+            count[i]     = n;
+            miles[i]     = m;
+            max[i]       = mx;
+            duration[i] -= d;
+        }
+
+        private int lowerBound(int key) {
+            if (size > 0 && keys[size - 1] < key) return size;
+            int lo = 0, hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (keys[mid] < key) lo = mid + 1; else hi = mid;
+            }
+            return lo;
+        }
+
+        private void insert(int pos, int key) {
+            if (size == keys.length) {
+                int cap  = size * 2;
+                keys     = Arrays.copyOf(keys, cap);
+                count    = Arrays.copyOf(count, cap);
+                miles    = Arrays.copyOf(miles, cap);
+                max      = Arrays.copyOf(max, cap);
+                duration = Arrays.copyOf(duration, cap);
+            }
+            int tail = size - pos;
+            System.arraycopy(keys,     pos, keys,     pos + 1, tail);
+            System.arraycopy(count,    pos, count,    pos + 1, tail);
+            System.arraycopy(miles,    pos, miles,    pos + 1, tail);
+            System.arraycopy(max,      pos, max,      pos + 1, tail);
+            System.arraycopy(duration, pos, duration, pos + 1, tail);
+            keys[pos] = key;
+            count[pos] = 0;
+            miles[pos] = 0;
+            max[pos] = 0;
+            duration[pos] = 0;
+            size++;
+        }
+    }
+}
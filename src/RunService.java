@@ -1,92 +1,412 @@
-import java.time.DayOfWeek;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Clock;
 import java.time.LocalDate;
-import java.time.temporal.TemporalAdjusters;
-import java.util.Comparator;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * One athlete's runs. Safe for concurrent use: writers take the write lock only for
+ * the in-memory update, and reads run optimistically against the live structures,
+ * retrying under the read lock only if a write raced them, so readers never hold
+ * writers up. Persistence is serialized separately on the repository, or handed to a
+ * shared {@link BatchingRunWriter} for group commit. Stored runs carry a stable id;
+ * updates and deletes by id are logged as edit records, and compaction (on the writer
+ * thread under group commit) folds them into the file once the repository asks for it.
+ * Goals and week bounds come from a {@link GoalCache} on an injectable {@link Clock}.
+ * Every applied change is also published as a {@link RunEvent}, without blocking, to
+ * live subscribers such as {@link RunView}s. A clean close saves the built state as a
+ * {@link RunStateSnapshot}, which the next start loads instead of the run file.
+ */
 public class RunService {
 
     public static final double HALF_MARATHON = 13.1;
     public static final double MARATHON      = 26.2;
 
-    private List<Run> runs;
-    private RunRepository repository;
+    private final RunIndex index;
+    private final RollingWindows windows;
+    private final RunSketches sketches;
+    private final RunRollups rollups;
+    private final GoalCache goals;
+    private final RunRepository repository;
+    private final BatchingRunWriter writer; // null: append synchronously on the caller
+    private final RunEventPublisher events;
+    private long eventSeq; // guarded by the write lock
+    private final StampedLock lock = new StampedLock();
+    private final Object submitOrder = new Object(); // changes reach the writer in the order they were applied
+    private final AtomicInteger queued = new AtomicInteger(); // submissions applied in memory but not yet committed
 
     public RunService(RunRepository repository) {
+        this(repository, null);
+    }
+
+    public RunService(RunRepository repository, BatchingRunWriter writer) {
+        this(repository, writer, Clock.systemDefaultZone());
+    }
+
+    /** @param clock decides "today" for goals, week bounds and the rolling windows */
+    public RunService(RunRepository repository, BatchingRunWriter writer, Clock clock) {
+        this(repository, writer, clock, new RunEventPublisher());
+    }
+
+    /** @param events publishes this service's changes; its overflow policy decides what a slow subscriber loses */
+    public RunService(RunRepository repository, BatchingRunWriter writer, Clock clock, RunEventPublisher events) {
         this.repository = repository;
-        this.runs       = repository.load();
+        this.writer     = writer;
+        this.events     = events;
+        this.goals      = new GoalCache(clock);
+        RunStateSnapshot state = RunStateSnapshot.load(repository);
+        if (state != null) {
+            this.index    = state.index();
+            this.sketches = state.sketches();
+            this.rollups  = state.rollups();
+        } else {
+            this.index    = new RunIndex(repository.loadTable());
+            this.sketches = new RunSketches(index);
+            this.rollups  = RunRollups.build(index.table());
+        }
+        this.windows    = new RollingWindows(index, clock);
+    }
+
+    // returns the run as stored, with its id
+    public Run addRun(Run run) {
+        return addRuns(List.of(run)).get(0);
+    }
+
+    /**
+     * Returns the runs as stored once they are persisted. If they could not be written
+     * (already reported) this throws instead, so nothing is acknowledged that isn't on
+     * disk; the runs stay applied in memory.
+     */
+    public List<Run> addRuns(List<Run> batch) {
+        long start = RunMetrics.ADD_RUN.start();
+        List<Run> stored = new ArrayList<>(batch.size());
+        try {
+            addRunsAsync(batch, stored).join();
+        } catch (CompletionException e) {
+            throw notPersisted(e);
+        } finally {
+            RunMetrics.ADD_RUN.stop(start);
+        }
+        return stored;
+    }
+
+    // visible to reads immediately; the future completes when the runs are on disk
+    public CompletableFuture<Void> addRunsAsync(List<Run> batch) {
+        return addRunsAsync(batch, null);
+    }
+
+    // an edit can only follow its run's add into the file, so a compaction in between can't store the run twice
+    private CompletableFuture<Void> addRunsAsync(List<Run> batch, List<Run> storedOut) {
+        if (batch.isEmpty()) return CompletableFuture.completedFuture(null); // nothing to log, and no latest row to read
+        if (writer == null) {
+            synchronized (repository) {
+                List<Run> stored = applyAdds(batch);
+                if (storedOut != null) storedOut.addAll(stored);
+                try {
+                    repository.appendBatch(stored);
+                } catch (IOException e) {
+                    System.err.println("Error appending runs: " + e.getMessage());
+                    return CompletableFuture.failedFuture(e);
+                }
+                compactIfNeeded();
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+        synchronized (submitOrder) {
+            queued.incrementAndGet(); // before the table changes: see compactIfNeeded
+            List<Run> stored = applyAdds(batch);
+            if (storedOut != null) storedOut.addAll(stored);
+            return track(writer.submit(repository, stored, this::compactIfNeeded));
+        }
+    }
+
+    private CompletableFuture<Void> track(CompletableFuture<Void> done) {
+        done.whenComplete((v, e) -> queued.decrementAndGet());
+        return done;
+    }
+
+    private List<Run> applyAdds(List<Run> batch) {
+        long stamp = lock.writeLock();
+        try {
+            List<Run> stored = index.addAll(batch);
+            RunTable table = index.table();
+            long latestDay = table.epochDay(table.size() - 1);
+            for (Run r : stored) {
+                windows.onAdd(r);
+                sketches.onAdd(r);
+                rollups.onAdd(r);
+                goals.onAdd(r.getDate().toEpochDay(), latestDay);
+            }
+            if (events.hasSubscribers()) {
+                for (Run r : stored) events.publish(RunEvent.added(++eventSeq, r));
+            }
+            return stored;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public Optional<Run> getRun(long id) {
+        return Optional.ofNullable(read(() -> index.find(id)));
+    }
+
+    // replaces the run's date, distance, duration and input type, keeping its id; false if there is no such run
+    public boolean updateRun(long id, Run replacement) {
+        return edit(id, replacement.withId(id));
+    }
+
+    public boolean deleteRun(long id) {
+        return edit(id, null);
+    }
+
+    // applies the edit in memory, then logs it; returns once it is persisted, and throws like addRuns if it can't be
+    private boolean edit(long id, Run replacement) {
+        RunEdit edit = replacement == null ? RunEdit.delete(id) : RunEdit.update(replacement);
+        if (writer == null) {
+            synchronized (repository) {
+                if (!apply(id, replacement)) return false;
+                try {
+                    repository.appendEdits(List.of(edit));
+                } catch (IOException e) {
+                    System.err.println("Error saving run edit: " + e.getMessage());
+                    throw new UncheckedIOException(e);
+                }
+                compactIfNeeded();
+                return true;
+            }
+        }
+        CompletableFuture<Void> done;
+        synchronized (submitOrder) {
+            queued.incrementAndGet();
+            if (!apply(id, replacement)) {
+                queued.decrementAndGet();
+                return false;
+            }
+            done = track(writer.submitEdits(repository, List.of(edit), this::compactIfNeeded));
+        }
+        try {
+            done.join();
+        } catch (CompletionException e) {
+            throw notPersisted(e);
+        }
+        return true;
+    }
+
+    // the failure has been reported where it happened; this only hands it to the caller
+    private static RuntimeException notPersisted(CompletionException e) {
+        if (e.getCause() instanceof IOException io) return new UncheckedIOException(io);
+        if (e.getCause() instanceof RuntimeException r) return r;
+        return e;
+    }
+
+    private boolean apply(long id, Run replacement) {
+        long stamp = lock.writeLock();
+        try {
+            Run old = index.remove(id);
+            if (old == null) return false;
+            windows.invalidate();
+            sketches.onRemove(old);
+            rollups.onRemove(old, index);
+            goals.onRemove(old.getDate().toEpochDay());
+            if (replacement != null) {
+                index.add(replacement);
+                sketches.onAdd(replacement);
+                rollups.onAdd(replacement);
+                goals.onAdd(replacement.getDate().toEpochDay(), index.table().epochDay(index.size() - 1));
+            }
+            if (events.hasSubscribers()) {
+                events.publish(replacement == null ? RunEvent.deleted(++eventSeq, old)
+                                                   : RunEvent.updated(++eventSeq, old, replacement));
+            }
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /** Run change events, published under the write lock in the order changes were applied. */
+    public RunEventPublisher events() {
+        return events;
+    }
+
+    /** Seeds {@code view} from the current runs and subscribes it to every later change. */
+    public <V extends RunView> V attach(V view) {
+        // publishing needs the write lock, so no event can fall between the seed and the subscription
+        readLocked(() -> {
+            view.seed(this, index.table(), eventSeq);
+            events.subscribe(view);
+            return null;
+        });
+        return view;
+    }
+
+    // for a view that saw a sequence gap: rebuild it as of now; queued events it already reflects are skipped
+    void reseed(RunView view) {
+        readLocked(() -> {
+            view.seed(this, index.table(), eventSeq);
+            return null;
+        });
     }
 
-    public void addRun(Run run) {
-        runs.add(run);
-        repository.save(runs);
+    // ends the event stream, checkpoints and closes the run file, then saves the state beside it so the next start can skip rebuilding it
+    public void close() {
+        events.close();
+        synchronized (repository) {
+            long stamp = lock.readLock();
+            try {
+                repository.checkpoint(index.table());
+                repository.close();
+                RunStateSnapshot.write(repository, index, sketches, rollups);
+            } catch (IOException e) {
+                System.err.println("Error saving run state: " + e.getMessage());
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
     }
 
+    // oldest first; a live view, so only for single-threaded callers
     public List<Run> getAllRuns() {
-        return runs;
+        return index.runs();
+    }
+
+    public int getRunCount() {
+        return read(index::size);
+    }
+
+    // newest first; offset counts back from the most recent run, for paging through history
+    public List<Run> getRecentRuns(int offset, int limit) {
+        return read(() -> {
+            RunTable table = index.table();
+            int end   = Math.max(0, table.size() - offset);
+            int start = Math.max(0, end - limit);
+            List<Run> page = new ArrayList<>(end - start);
+            for (int i = end - 1; i >= start; i--) page.add(table.get(i));
+            return page;
+        });
+    }
+
+    public List<Run> getRecentRuns(int limit) {
+        return getRecentRuns(0, limit);
+    }
+
+    public Optional<Run> getMostRecentRun() {
+        return Optional.ofNullable(read(index::latest));
+    }
+
+    // matches an existing run on date, distance and duration
+    public boolean hasRun(Run run) {
+        return read(() -> index.contains(run));
     }
 
     public RunStats getStats(LocalDate from, LocalDate to) {
-        List<Run> filtered = runs.stream()
-                .filter(r -> !r.getDate().isBefore(from) && !r.getDate().isAfter(to))
-                .collect(Collectors.toList());
+        long start = RunMetrics.GET_STATS.start();
+        RunStats stats = read(() -> index.stats(from, to));
+        RunMetrics.GET_STATS.stop(start);
+        return stats;
+    }
+
+    // count, miles and duration over [from, to] from the day/week/month/year rollups
+    public RunRollups.Totals getTotals(LocalDate from, LocalDate to) {
+        return readLocked(() -> rollups.totals(from, to));
+    }
+
+    // oldest first, under the read lock: unlike read(), a visitor's side effects can't be retried
+    public void forEachRun(LocalDate from, LocalDate to, RunTable.RowVisitor visitor) {
+        readLocked(() -> {
+            RunTable table = index.table();
+            table.forEach(table.lowerBound(from.toEpochDay()), table.upperBound(to.toEpochDay()), visitor);
+            return null;
+        });
+    }
+
+    // newest first like getRecentRuns, but through one cursor under the read lock: nothing is allocated per run
+    public void forEachRecentRow(int offset, int limit, RecentRowVisitor visitor) throws IOException {
+        long stamp = lock.readLock();
+        try {
+            RunTable table = index.table();
+            int end   = Math.max(0, table.size() - offset);
+            int start = Math.max(0, end - Math.max(0, limit));
+            RunTable.Cursor row = table.cursor();
+            for (int i = end - 1; i >= start; i--) {
+                row.seek(i);
+                row.next();
+                visitor.visit(row);
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
 
-        if (filtered.isEmpty()) return new RunStats(0, 0.0, 0.0, 0.0);
+    /** Sees each row through the same cursor, valid only during the call. */
+    @FunctionalInterface
+    public interface RecentRowVisitor {
+        void visit(RunTable.Cursor row) throws IOException;
+    }
 
-        int    totalRuns  = filtered.size();
-        double totalMiles = filtered.stream().mapToDouble(Run::getDistanceMiles).sum();
-        double avgMiles   = totalMiles / totalRuns;
-        double highestDay = filtered.stream().mapToDouble(Run::getDistanceMiles).max().orElse(0.0);
+    // p in [0, 1]; pace in min/mile over the timed runs in [from, to], 0 if there are none
+    public double getPacePercentile(LocalDate from, LocalDate to, double p) {
+        return readLocked(() -> sketches.percentile(RunSketches.Metric.PACE, from, to, p));
+    }
 
-        return new RunStats(totalRuns, totalMiles, avgMiles, highestDay);
+    // p in [0, 1]; run distance in miles over [from, to], 0 if there are no runs
+    public double getDistancePercentile(LocalDate from, LocalDate to, double p) {
+        return readLocked(() -> sketches.percentile(RunSketches.Metric.DISTANCE, from, to, p));
     }
 
     public RunStats getLast7Days() {
-        LocalDate today = LocalDate.now();
-        return getStats(today.minusDays(7), today);
+        return window(RollingWindows.Window.LAST_7_DAYS);
     }
 
     public RunStats getLast30Days() {
-        LocalDate today = LocalDate.now();
-        return getStats(today.minusDays(30), today);
+        return window(RollingWindows.Window.LAST_30_DAYS);
     }
 
     public RunStats getLast365Days() {
-        LocalDate today = LocalDate.now();
-        return getStats(today.minusDays(365), today);
+        return window(RollingWindows.Window.LAST_365_DAYS);
     }
 
     public RunStats getCalendarYear() {
-        LocalDate today    = LocalDate.now();
-        LocalDate janFirst = LocalDate.of(today.getYear(), 1, 1);
-        return getStats(janFirst, today);
+        return window(RollingWindows.Window.CALENDAR_YEAR);
     }
 
     public RunStats getAllTime() {
-        if (runs.isEmpty()) return new RunStats(0, 0.0, 0.0, 0.0);
-        LocalDate earliest = runs.stream().map(Run::getDate).min(Comparator.naturalOrder()).get();
-        return getStats(earliest, LocalDate.now());
+        return window(RollingWindows.Window.ALL_TIME);
     }
 
     public LocalDate getWeekStart() {
-        return LocalDate.now().with(TemporalAdjusters.previousOrSame(DayOfWeek.SUNDAY));
+        return goals.weekStart();
     }
 
     public LocalDate getWeekEnd() {
-        return LocalDate.now().with(TemporalAdjusters.nextOrSame(DayOfWeek.SATURDAY));
+        return goals.weekEnd();
     }
 
     public RunStats getThisCalendarWeek() {
-        return getStats(getWeekStart(), getWeekEnd());
+        return window(RollingWindows.Window.THIS_WEEK);
     }
 
     public double getNextRunGoalMiles() {
-        Optional<Run> lastRun = runs.stream()
-                .max(Comparator.comparing(Run::getDate));
+        long start = RunMetrics.RUN_GOAL.start();
+        double goal = goals.nextRunGoal();
+        if (Double.isNaN(goal)) {
+            long seen = goals.version();
+            goal = nextRunGoalMiles();
+            goals.putNextRunGoal(goal, seen);
+        }
+        RunMetrics.RUN_GOAL.stop(start);
+        return goal;
+    }
 
-        double last = lastRun.map(Run::getDistanceMiles).orElse(0.0);
+    private double nextRunGoalMiles() {
+        double last = getMostRecentRun().map(Run::getDistanceMiles).orElse(0.0);
 
         if (last >= 23.0) return MARATHON;
         if (last >= 10.0) return HALF_MARATHON;
@@ -106,24 +426,48 @@ public class RunService {
     }
 
     public double getNextWeeklyGoalMiles() {
+        long start = RunMetrics.WEEKLY_GOAL.start();
+        double goal = goals.weeklyGoal();
+        if (Double.isNaN(goal)) {
+            long seen = goals.version();
+            goal = nextWeeklyGoalMiles();
+            goals.putWeeklyGoal(goal, seen);
+        }
+        RunMetrics.WEEKLY_GOAL.stop(start);
+        return goal;
+    }
+
+    private double nextWeeklyGoalMiles() {
         LocalDate lastWeekStart = getWeekStart().minusWeeks(1);
         LocalDate lastWeekEnd   = getWeekStart().minusDays(1);
         RunStats  lastWeek      = getStats(lastWeekStart, lastWeekEnd);
 
-        double lastTotal = lastWeek.totalMiles();
+        return weeklyGoalAfter(lastWeek.totalMiles());
+    }
 
+    // this week's goal given last week's miles
+    static double weeklyGoalAfter(double lastTotal) {
         double increment = lastTotal < 25.0 ? 3.0 : 5.0;
         return Math.round((lastTotal + increment) * 100.0) / 100.0;
     }
 
     public int getRemainingDaysInWeek() {
-        LocalDate today   = LocalDate.now();
-        LocalDate weekEnd = getWeekEnd();
-        long days = today.until(weekEnd, java.time.temporal.ChronoUnit.DAYS);
-        return (int) Math.max(0, days);
+        return Math.max(0, goals.remainingDaysInWeek());
     }
 
     public WeeklyGoalBreakdown getWeeklyGoalBreakdown(int plannedRunsRemaining) {
+        long start = RunMetrics.BREAKDOWN.start();
+        WeeklyGoalBreakdown breakdown = goals.breakdown(plannedRunsRemaining);
+        if (breakdown == null) {
+            long seen = goals.version();
+            breakdown = weeklyGoalBreakdown(plannedRunsRemaining);
+            goals.putBreakdown(plannedRunsRemaining, breakdown, seen);
+        }
+        RunMetrics.BREAKDOWN.stop(start);
+        return breakdown;
+    }
+
+    private WeeklyGoalBreakdown weeklyGoalBreakdown(int plannedRunsRemaining) {
         double weeklyGoal     = getNextWeeklyGoalMiles();
         double milesThisWeek  = getThisCalendarWeek().totalMiles();
         double milesRemaining = Math.max(0, weeklyGoal - milesThisWeek);
@@ -139,9 +483,69 @@ public class RunService {
     }
 
 
+    private RunStats window(RollingWindows.Window w) {
+        LocalDate now = goals.today();
+        if (!windows.isCurrent(now)) {
+            long stamp = lock.writeLock();
+            try {
+                if (!windows.isCurrent(now)) windows.roll(now);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+        return read(() -> windows.get(w));
+    }
+
+    private <T> T read(Supplier<T> op) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = op.get();
+                if (lock.validate(stamp)) return result;
+            } catch (RuntimeException e) {
+                // a racing write can move arrays mid-read; only trust the failure if nothing raced
+                if (lock.validate(stamp)) throw e;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return op.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // for reads that walk maps or call back out, which an optimistic retry can't make safe
+    private <T> T readLocked(Supplier<T> op) {
+        long stamp = lock.readLock();
+        try {
+            return op.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // caller owns the repository: holds its monitor, or is the batching writer thread
+    private void compactIfNeeded() {
+        if (!repository.needsCompaction()) return;
+        long stamp = lock.readLock();
+        try {
+            // under group commit this runs for a submission not yet marked done; any other queued one is
+            // already in the table and would be appended again after the snapshot, so wait for the last
+            if (writer != null && queued.get() > 1) return;
+            repository.save(index.table());
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
     public static double paceMinPerMile(Run run) {
-        if (run.getDurationSeconds() == 0 || run.getDistanceMiles() == 0) return 0;
-        return (run.getDurationSeconds() / 60.0) / run.getDistanceMiles();
+        return paceMinPerMile(run.getDistanceMiles(), run.getDurationSeconds());
+    }
+
+    public static double paceMinPerMile(double distanceMiles, long durationSeconds) {
+        if (durationSeconds == 0 || distanceMiles == 0) return 0;
+        return (durationSeconds / 60.0) / distanceMiles;
     }
 
     public record RunStats(int totalRuns, double totalMiles, double avgMiles, double highestDay) {}
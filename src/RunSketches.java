@@ -0,0 +1,157 @@
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Pace and distance {@link QuantileSketch}es per calendar month, kept up to date as
+ * runs are added. A percentile over any date range merges the sketches of the whole
+ * months it covers and adds the raw runs of the partial months at either end from
+ * the {@link RunIndex}, so a query reads at most two months of runs however long
+ * the range is, and never materializes or sorts the runs it covers. Removing a run
+ * rebuilds its month from the index. Memory is a
+ * fixed ~2.7 KB per month that has runs. Not synchronized; {@link RunService}
+ * updates it under its write lock and queries it under the read lock.
+ */
+public class RunSketches {
+
+    public enum Metric { PACE, DISTANCE }
+
+    // pace 1 to 256 min/mile, distance 1/32 to 256 miles; outliers clamp to the end buckets
+    private static final int PACE_MIN_EXP  = 0;
+    private static final int PACE_MAX_EXP  = 8;
+    private static final int MILES_MIN_EXP = -5;
+    private static final int MILES_MAX_EXP = 8;
+
+    private final RunIndex index;
+    private final TreeMap<Integer, QuantileSketch[]> months = new TreeMap<>(); // year * 12 + month - 1
+
+    public RunSketches(RunIndex index) {
+        this.index = index;
+        RunTable table = index.table();
+        int monthEnd = Integer.MIN_VALUE; // rows are sorted: resolve the month once per month
+        QuantileSketch[] current = null;
+        for (int i = 0; i < table.size(); i++) {
+            int day = table.epochDay(i);
+            if (current == null || day >= monthEnd) {
+                LocalDate date = LocalDate.ofEpochDay(day);
+                current  = month(monthKey(date));
+                monthEnd = (int) date.withDayOfMonth(1).plusMonths(1).toEpochDay();
+            }
+            add(current, table.miles(i), table.durationSeconds(i));
+        }
+    }
+
+    // as written by put(); index must hold the runs the sketches were built from
+    RunSketches(RunIndex index, ByteBuffer in) {
+        this.index = index;
+        int n = in.getInt();
+        for (int m = 0; m < n; m++) {
+            QuantileSketch[] month = month(in.getInt());
+            for (QuantileSketch s : month) s.get(in);
+        }
+    }
+
+    // call after the run is in the index
+    public void onAdd(Run run) {
+        add(month(monthKey(run.getDate())), run.getDistanceMiles(), run.getDurationSeconds());
+    }
+
+    void onAdd(int epochDay, double miles, long durationSeconds) {
+        add(month(monthKey(LocalDate.ofEpochDay(epochDay))), miles, durationSeconds);
+    }
+
+    int serializedBytes() {
+        int bytes = 4;
+        for (QuantileSketch[] month : months.values()) {
+            bytes += 4;
+            for (QuantileSketch s : month) bytes += s.serializedBytes();
+        }
+        return bytes;
+    }
+
+    // month count, then per month its key and its sketches in Metric order (RunStateSnapshot)
+    void put(ByteBuffer out) {
+        out.putInt(months.size());
+        for (Map.Entry<Integer, QuantileSketch[]> e : months.entrySet()) {
+            out.putInt(e.getKey());
+            for (QuantileSketch s : e.getValue()) s.put(out);
+        }
+    }
+
+    // call after the run is out of the index: sketches can't subtract, so its month is rebuilt from the rows
+    public void onRemove(Run run) {
+        int key = monthKey(run.getDate());
+        QuantileSketch[] month = months.get(key);
+        if (month == null) return;
+        for (QuantileSketch s : month) s.clear();
+
+        RunTable table = index.table();
+        LocalDate start = monthStart(key);
+        int hi = table.upperBound(start.plusMonths(1).toEpochDay() - 1);
+        int lo = table.lowerBound(start.toEpochDay());
+        for (int i = lo; i < hi; i++) add(month, table.miles(i), table.durationSeconds(i));
+        if (hi == lo) months.remove(key);
+    }
+
+    /** Nearest-rank percentile (p in [0, 1]) over the runs dated in [from, to]; 0 if there are none. */
+    public double percentile(Metric metric, LocalDate from, LocalDate to, double p) {
+        QuantileSketch acc = newSketch(metric);
+        if (index.isEmpty()) return acc.quantile(p);
+
+        // clip to the data so open-ended ranges (LocalDate.MIN) stay in int month keys
+        LocalDate first = index.earliest().getDate(), last = index.latest().getDate();
+        if (from.isBefore(first)) from = first;
+        if (to.isAfter(last))     to   = last;
+        if (from.isAfter(to)) return acc.quantile(p);
+
+        int firstFull = monthKey(from) + (from.getDayOfMonth() == 1 ? 0 : 1);
+        int lastFull  = monthKey(to) - (to.getDayOfMonth() == to.lengthOfMonth() ? 0 : 1);
+        if (firstFull > lastFull) {
+            scan(metric, acc, from, to);
+        } else {
+            for (QuantileSketch[] m : months.subMap(firstFull, true, lastFull, true).values()) {
+                acc.merge(m[metric.ordinal()]);
+            }
+            scan(metric, acc, from, monthStart(firstFull).minusDays(1));
+            scan(metric, acc, monthStart(lastFull + 1), to);
+        }
+        return acc.quantile(p);
+    }
+
+    private void scan(Metric metric, QuantileSketch acc, LocalDate from, LocalDate to) {
+        RunTable table = index.table();
+        int hi = table.upperBound(to.toEpochDay());
+        for (int i = table.lowerBound(from.toEpochDay()); i < hi; i++) {
+            acc.add(value(metric, table.miles(i), table.durationSeconds(i)));
+        }
+    }
+
+    private QuantileSketch[] month(int key) {
+        return months.computeIfAbsent(key, k -> new QuantileSketch[] {newSketch(Metric.PACE), newSketch(Metric.DISTANCE)});
+    }
+
+    // untimed runs have pace 0, which the sketch ignores
+    private static void add(QuantileSketch[] month, double miles, long durationSeconds) {
+        month[Metric.PACE.ordinal()].add(value(Metric.PACE, miles, durationSeconds));
+        month[Metric.DISTANCE.ordinal()].add(miles);
+    }
+
+    private static double value(Metric metric, double miles, long durationSeconds) {
+        return metric == Metric.PACE ? RunService.paceMinPerMile(miles, durationSeconds) : miles;
+    }
+
+    private static QuantileSketch newSketch(Metric metric) {
+        return metric == Metric.PACE
+                ? new QuantileSketch(PACE_MIN_EXP, PACE_MAX_EXP)
+                : new QuantileSketch(MILES_MIN_EXP, MILES_MAX_EXP);
+    }
+
+    private static int monthKey(LocalDate date) {
+        return date.getYear() * 12 + date.getMonthValue() - 1;
+    }
+
+    private static LocalDate monthStart(int key) {
+        return LocalDate.of(Math.floorDiv(key, 12), Math.floorMod(key, 12) + 1, 1);
+    }
+}
@@ -0,0 +1,230 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * The in-memory state {@link RunService} builds at startup (the sorted run table,
+ * its pace and distance sketches and its rollups) saved beside the run file on clean
+ * shutdown, so the next start maps one file and bulk-copies each column instead of
+ * parsing the runs and rebuilding every aggregate. The index's prefix sums, max tree
+ * and id map are not saved; {@link RunIndex} derives them on first use, after the
+ * menu is up. A cold load of 1M runs still takes about 100 ms on a single slow core,
+ * most of it copying the 29 MB of columns onto the heap, so the 50 ms target for
+ * that size is not met there.
+ *
+ * <pre>
+ * runs.csv.state (little-endian)
+ *   int   magic         "RUNT"
+ *   short version
+ *   short reserved
+ *   long  baseLength    size of the repository's stateBase(), -1 if it has none
+ *   long  baseModified  its mtime, millis
+ *   int   baseCrc       CRC32C of its first and last 64 KiB
+ *   long  logLength     bytes of the repository's stateLog() the table reflects, -1 if it has none
+ *   int   logCrc        CRC32C of those bytes
+ *   long  nextId        the id the next new run gets
+ *   int   rows
+ *   int   sketchBytes
+ *   int   rollupBytes
+ *   then the table columns ({@link RunTable#ROW_BYTES} per row), the sketches and the rollups
+ * </pre>
+ *
+ * The state is used only if the base file still has its length, mtime and sampled
+ * checksum (it is only ever replaced whole, by compaction) and the log still starts
+ * with exactly the bytes the table was saved from. Records appended to the log since
+ * are then replayed on top; if any of them edit a run, the aggregates are rebuilt
+ * from the table. Anything else falls back to a full load. The file is written beside
+ * its target and renamed over it, so it is never seen half-written.
+ */
+public final class RunStateSnapshot {
+
+    static final int   MAGIC        = 0x52554E54; // "RUNT"
+    static final short VERSION      = 1;
+    static final int   HEADER_BYTES = 60;
+
+    private static final int SAMPLE_BYTES = 64 * 1024;
+
+    private final RunIndex index;
+    private final RunSketches sketches;
+    private final RunRollups rollups;
+
+    private RunStateSnapshot(RunIndex index, RunSketches sketches, RunRollups rollups) {
+        this.index    = index;
+        this.sketches = sketches;
+        this.rollups  = rollups;
+    }
+
+    public RunIndex index() {
+        return index;
+    }
+
+    public RunSketches sketches() {
+        return sketches;
+    }
+
+    public RunRollups rollups() {
+        return rollups;
+    }
+
+    public static Path path(Path source) {
+        return source.resolveSibling(source.getFileName() + ".state");
+    }
+
+    /** The state saved for {@code repository}, with any newer log records applied; null if there is none that matches. */
+    public static RunStateSnapshot load(RunRepository repository) {
+        Path file = path(repository.path());
+        if (!Files.exists(file)) return null;
+        long start = RunMetrics.LOAD.start();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (head.hasRemaining() && ch.read(head) > 0) { }
+            head.flip();
+            if (head.remaining() < HEADER_BYTES || head.getInt() != MAGIC || head.getShort() != VERSION) {
+                return corrupt(file, "unknown format");
+            }
+            head.getShort();
+            long baseLength   = head.getLong();
+            long baseModified = head.getLong();
+            int  baseCrc      = head.getInt();
+            long logLength    = head.getLong();
+            int  logCrc       = head.getInt();
+            long nextId       = head.getLong();
+            int  rows         = head.getInt();
+            int  sketchBytes  = head.getInt();
+            int  rollupBytes  = head.getInt();
+            if (rows < 0 || sketchBytes < 0 || rollupBytes < 0
+                    || ch.size() != HEADER_BYTES + (long) rows * RunTable.ROW_BYTES + sketchBytes + rollupBytes) {
+                return corrupt(file, "truncated");
+            }
+
+            // a changed run file is the normal way for the state to go stale: no report
+            Path base = repository.stateBase();
+            if (base == null ? baseLength != -1 : !baseMatches(base, baseLength, baseModified, baseCrc)) return null;
+            Path log = repository.stateLog();
+            if (log == null ? logLength != -1 : !logMatches(log, logLength, logCrc)) return null;
+
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, ch.size() - HEADER_BYTES);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            RunTable table = RunTable.getColumns(map, rows);
+            ByteBuffer sketchData = map.slice(map.position(), sketchBytes).order(ByteOrder.LITTLE_ENDIAN);
+            RunRollups rollups = RunRollups.get(map.position(map.position() + sketchBytes).slice()
+                                                   .order(ByteOrder.LITTLE_ENDIAN));
+            if (rollups == null) return corrupt(file, "bad rollups");
+            RunMetrics.bytesRead(ch.size());
+
+            RunTable loaded = log == null ? table : repository.loadTail(table, logLength);
+            // untouched rows are already sorted and numbered: skip the checks
+            RunIndex index = loaded == table && loaded.size() == rows ? new RunIndex(table, nextId) : new RunIndex(loaded);
+            RunSketches sketches;
+            if (loaded != table) {
+                // the tail edited runs the saved aggregates count
+                sketches = new RunSketches(index);
+                rollups  = RunRollups.build(index.table());
+            } else {
+                sketches = new RunSketches(index, sketchData);
+                for (int i = rows; i < loaded.size(); i++) {
+                    sketches.onAdd(loaded.epochDay(i), loaded.miles(i), loaded.durationSeconds(i));
+                    rollups.add(loaded.epochDay(i), loaded.miles(i), loaded.durationSeconds(i));
+                }
+            }
+            RunMetrics.runsLoaded(index.size());
+            return new RunStateSnapshot(index, sketches, rollups);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error reading run state, loading the run file instead: " + e);
+            return null;
+        } finally {
+            RunMetrics.LOAD.stop(start);
+        }
+    }
+
+    /**
+     * Saves {@code index}'s table and its aggregates for {@code repository}. Call once
+     * the repository is closed, with the table exactly as its files now hold it.
+     */
+    public static void write(RunRepository repository, RunIndex index, RunSketches sketches, RunRollups rollups)
+            throws IOException {
+        RunTable table = index.table();
+        if (!Files.exists(repository.path())) return;
+        Path base = repository.stateBase(), log = repository.stateLog();
+        long logLength = log == null ? -1 : repository.stateLogLength();
+
+        int sketchBytes = sketches.serializedBytes(), rollupBytes = rollups.serializedBytes();
+        long total = HEADER_BYTES + (long) table.size() * RunTable.ROW_BYTES + sketchBytes + rollupBytes;
+        if (total > Integer.MAX_VALUE) return; // too big for one buffer; the next start loads the run file
+        ByteBuffer buf = ByteBuffer.allocateDirect((int) total).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(MAGIC).putShort(VERSION).putShort((short) 0);
+        if (base == null) {
+            buf.putLong(-1).putLong(0).putInt(0);
+        } else {
+            buf.putLong(Files.size(base)).putLong(Files.getLastModifiedTime(base).toMillis()).putInt(sampleCrc(base));
+        }
+        buf.putLong(logLength).putInt(log == null ? 0 : prefixCrc(log, logLength)).putLong(index.nextId());
+        buf.putInt(table.size()).putInt(sketchBytes).putInt(rollupBytes);
+        table.putColumns(buf);
+        sketches.put(buf);
+        rollups.put(buf);
+        buf.flip();
+
+        Path target = path(repository.path());
+        Path tmp    = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) ch.write(buf);
+            ch.force(false);
+        } catch (IOException e) {
+            RunRepository.deleteQuietly(tmp);
+            throw e;
+        }
+        RunRepository.replaceAtomically(tmp, target);
+        RunMetrics.bytesWritten(total);
+    }
+
+    private static RunStateSnapshot corrupt(Path file, String reason) {
+        System.err.println("Error reading run state " + file + ": " + reason + "; loading the run file instead");
+        return null;
+    }
+
+    private static boolean baseMatches(Path base, long length, long modified, int crc) throws IOException {
+        return Files.exists(base) && Files.size(base) == length
+                && Files.getLastModifiedTime(base).toMillis() == modified && sampleCrc(base) == crc;
+    }
+
+    // a missing log counts as empty
+    private static boolean logMatches(Path log, long length, int crc) throws IOException {
+        if (length < 0) return false;
+        long size = Files.exists(log) ? Files.size(log) : 0;
+        return size >= length && (length == 0 ? crc == 0 : prefixCrc(log, length) == crc);
+    }
+
+    private static int sampleCrc(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            CRC32C crc = new CRC32C();
+            update(crc, ch, 0, Math.min(size, SAMPLE_BYTES));
+            update(crc, ch, Math.max(0, size - SAMPLE_BYTES), Math.min(size, SAMPLE_BYTES));
+            return (int) crc.getValue();
+        }
+    }
+
+    private static int prefixCrc(Path file, long length) throws IOException {
+        if (length == 0) return 0;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            CRC32C crc = new CRC32C();
+            update(crc, ch, 0, length);
+            return (int) crc.getValue();
+        }
+    }
+
+    // mapped in chunks: one mapping can't pass 2 GiB
+    private static void update(CRC32C crc, FileChannel ch, long pos, long length) throws IOException {
+        for (long end = pos + length; pos < end; pos += 1 << 30) {
+            crc.update(ch.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(1 << 30, end - pos)));
+        }
+    }
+}
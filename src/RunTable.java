@@ -0,0 +1,231 @@
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Column-per-field run storage: one primitive array per attribute instead of a
+ * heap object per run. Rows are read through {@link #cursor()} or the per-column
+ * getters; {@link #get(int)} materializes a {@link Run} only when a caller needs one.
+ */
+public class RunTable {
+
+    private static final Run.InputType[] TYPES = Run.InputType.values();
+
+    static final int ROW_BYTES = 4 + 8 + 8 + 1 + 8; // as written by putColumns
+
+    private int[]    epochDay;
+    private double[] miles;
+    private long[]   durationSec;
+    private byte[]   inputType;
+    private long[]   runId;       // 0 until RunIndex assigns one
+    private int size;
+
+    public RunTable() {
+        this(16);
+    }
+
+    public RunTable(int capacity) {
+        capacity    = Math.max(1, capacity);
+        epochDay    = new int[capacity];
+        miles       = new double[capacity];
+        durationSec = new long[capacity];
+        inputType   = new byte[capacity];
+        runId       = new long[capacity];
+    }
+
+    public void add(Run run) {
+        insert(size, run);
+    }
+
+    public void add(int day, double distanceMiles, long durationSeconds, Run.InputType type) {
+        insert(size, day, distanceMiles, durationSeconds, type, 0);
+    }
+
+    public void add(int day, double distanceMiles, long durationSeconds, Run.InputType type, long id) {
+        insert(size, day, distanceMiles, durationSeconds, type, id);
+    }
+
+    public void insert(int pos, Run run) {
+        insert(pos, Math.toIntExact(run.getDate().toEpochDay()), run.getDistanceMiles(),
+                run.getDurationSeconds(), run.getInputType(), run.getId());
+    }
+
+    public void insert(int pos, int day, double distanceMiles, long durationSeconds, Run.InputType type, long id) {
+        if (pos < 0 || pos > size) throw new IndexOutOfBoundsException(pos);
+        ensureCapacity(size + 1);
+        if (pos < size) {
+            int tail = size - pos;
+            System.arraycopy(epochDay,    pos, epochDay,    pos + 1, tail);
+            System.arraycopy(miles,       pos, miles,       pos + 1, tail);
+            System.arraycopy(durationSec, pos, durationSec, pos + 1, tail);
+            System.arraycopy(inputType,   pos, inputType,   pos + 1, tail);
+            System.arraycopy(runId,       pos, runId,       pos + 1, tail);
+        }
+        epochDay[pos]    = day;
+        miles[pos]       = distanceMiles;
+        durationSec[pos] = durationSeconds;
+        inputType[pos]   = (byte) type.ordinal();
+        runId[pos]       = id;
+        size++;
+    }
+
+    public void remove(int pos) {
+        if (pos < 0 || pos >= size) throw new IndexOutOfBoundsException(pos);
+        int tail = size - pos - 1;
+        System.arraycopy(epochDay,    pos + 1, epochDay,    pos, tail);
+        System.arraycopy(miles,       pos + 1, miles,       pos, tail);
+        System.arraycopy(durationSec, pos + 1, durationSec, pos, tail);
+        System.arraycopy(inputType,   pos + 1, inputType,   pos, tail);
+        System.arraycopy(runId,       pos + 1, runId,       pos, tail);
+        size--;
+    }
+
+    void setId(int i, long id) {
+        runId[i] = id;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int epochDay(int i) {
+        return epochDay[i];
+    }
+
+    public LocalDate date(int i) {
+        return LocalDate.ofEpochDay(epochDay[i]);
+    }
+
+    public double miles(int i) {
+        return miles[i];
+    }
+
+    public long durationSeconds(int i) {
+        return durationSec[i];
+    }
+
+    public Run.InputType inputType(int i) {
+        return TYPES[inputType[i]];
+    }
+
+    public long id(int i) {
+        return runId[i];
+    }
+
+    public Run get(int i) {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException(i);
+        return Run.restore(date(i), miles[i], durationSec[i], inputType(i), runId[i]);
+    }
+
+    // read-only List view; each get materializes a Run
+    public List<Run> asList() {
+        return new AbstractList<>() {
+            @Override public Run get(int i) { return RunTable.this.get(i); }
+            @Override public int size()     { return size; }
+        };
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    public void forEach(int from, int to, RowVisitor visitor) {
+        for (int i = from; i < to; i++) visitor.visit(epochDay[i], miles[i], durationSec[i]);
+    }
+
+    /** One row's columns, passed as primitives so a scan allocates nothing per run. */
+    @FunctionalInterface
+    public interface RowVisitor {
+        void visit(int epochDay, double miles, long durationSeconds);
+    }
+
+    // first row with epochDay >= day; table must be sorted by epochDay
+    public int lowerBound(long day) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (epochDay[mid] < day) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    // first row with epochDay > day; table must be sorted by epochDay
+    public int upperBound(long day) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (epochDay[mid] <= day) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    // each column in turn as one bulk copy, in the buffer's byte order (RunStateSnapshot)
+    void putColumns(ByteBuffer out) {
+        int p = out.position();
+        out.asIntBuffer().put(epochDay, 0, size);
+        p += 4 * size;
+        out.position(p).asDoubleBuffer().put(miles, 0, size);
+        p += 8 * size;
+        out.position(p).asLongBuffer().put(durationSec, 0, size);
+        p += 8 * size;
+        out.position(p).put(inputType, 0, size);
+        p += size;
+        out.position(p).asLongBuffer().put(runId, 0, size);
+        out.position(p + 8 * size);
+    }
+
+    static RunTable getColumns(ByteBuffer in, int size) {
+        RunTable t = new RunTable(size);
+        int p = in.position();
+        in.asIntBuffer().get(t.epochDay, 0, size);
+        p += 4 * size;
+        in.position(p).asDoubleBuffer().get(t.miles, 0, size);
+        p += 8 * size;
+        in.position(p).asLongBuffer().get(t.durationSec, 0, size);
+        p += 8 * size;
+        in.position(p).get(t.inputType, 0, size);
+        p += size;
+        in.position(p).asLongBuffer().get(t.runId, 0, size);
+        in.position(p + 8 * size);
+        t.size = size;
+        return t;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= epochDay.length) return;
+        int cap = Math.max(needed, epochDay.length * 2);
+        epochDay    = Arrays.copyOf(epochDay, cap);
+        miles       = Arrays.copyOf(miles, cap);
+        durationSec = Arrays.copyOf(durationSec, cap);
+        inputType   = Arrays.copyOf(inputType, cap);
+        runId       = Arrays.copyOf(runId, cap);
+    }
+
+    /** Flyweight over the table: one object walks every row without materializing runs. */
+    public class Cursor {
+        private int row = -1;
+
+        public boolean next() {
+            return ++row < size;
+        }
+
+        public void seek(int i) {
+            row = i - 1;
+        }
+
+        public int row()                     { return row; }
+        public int epochDay()                { return epochDay[row]; }
+        public LocalDate date()              { return LocalDate.ofEpochDay(epochDay[row]); }
+        public double miles()                { return miles[row]; }
+        public long durationSeconds()        { return durationSec[row]; }
+        public Run.InputType inputType()     { return TYPES[inputType[row]]; }
+        public long id()                     { return runId[row]; }
+        public Run toRun()                   { return get(row); }
+    }
+}
@@ -0,0 +1,110 @@
+import java.util.concurrent.Flow;
+
+/**
+ * A derived view kept current from {@link RunService} events instead of queries.
+ * {@link RunService#attach} seeds it from the runs as of one event sequence number
+ * and subscribes it; from then on each event is applied on the publisher's executor.
+ * Events at or below the seeded sequence are skipped, and a gap in the sequence
+ * (events dropped by the publisher's overflow policy), or a {@code GAP} event for
+ * drops with nothing after them, makes the view reseed itself from the service,
+ * so drops cost a rebuild rather than a wrong answer.
+ *
+ * <p>Demand is requested in batches, so a view that falls behind stops asking and
+ * the backlog waits in its publisher queue, not on the adding thread. Subclasses
+ * mutate only inside {@link #seed}, {@link #onAdd} and {@link #onRemove}, which run
+ * holding the view's monitor; their getters should be {@code synchronized} too.
+ */
+public abstract class RunView implements Flow.Subscriber<RunEvent> {
+
+    private static final int BATCH = 64;
+
+    private RunService source;
+    private Flow.Subscription subscription;
+    private long seq;       // last event reflected in the view
+    private int consumed;   // since demand was last topped up
+    private long applied;
+    private long reseeds;
+
+    /** Replaces the view's state with {@code table}'s runs, oldest first. */
+    protected abstract void seed(RunTable table);
+
+    protected abstract void onAdd(Run run, boolean live);
+
+    protected abstract void onRemove(Run run);
+
+    final synchronized void seed(RunService source, RunTable table, long seq) {
+        this.source = source;
+        this.seq    = seq;
+        seed(table);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription s) {
+        synchronized (this) {
+            subscription = s;
+        }
+        s.request(BATCH);
+    }
+
+    @Override
+    public void onNext(RunEvent e) {
+        boolean gap;
+        synchronized (this) {
+            gap = e.kind() == RunEvent.Kind.GAP ? e.seq() > seq : e.seq() > seq + 1;
+            if (!gap && e.seq() > seq) {
+                seq = e.seq();
+                switch (e.kind()) {
+                    case ADDED   -> onAdd(e.run(), true);
+                    case UPDATED -> { onRemove(e.previous()); onAdd(e.run(), true); }
+                    case DELETED -> onRemove(e.previous());
+                }
+                applied++;
+            }
+        }
+        // outside the monitor: reseeding takes the service's read lock
+        if (gap) {
+            synchronized (this) {
+                reseeds++;
+            }
+            source.reseed(this);
+        }
+        Flow.Subscription s = null;
+        synchronized (this) {
+            if (++consumed == BATCH / 2) {
+                consumed = 0;
+                s = subscription;
+            }
+        }
+        if (s != null) s.request(BATCH / 2);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        // already reported by the publisher; the view keeps its last state
+    }
+
+    @Override
+    public void onComplete() {
+    }
+
+    /** Stops updates; the view keeps its last state. */
+    public void detach() {
+        Flow.Subscription s;
+        synchronized (this) {
+            s = subscription;
+        }
+        if (s != null) s.cancel();
+    }
+
+    public synchronized long lastSeq() {
+        return seq;
+    }
+
+    public synchronized long eventsApplied() {
+        return applied;
+    }
+
+    public synchronized long reseeds() {
+        return reseeds;
+    }
+}
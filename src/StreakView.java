@@ -0,0 +1,88 @@
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Live run streaks: consecutive days with at least one run. The current streak ends
+ * today, or yesterday if today has no run yet (it is still alive until midnight).
+ * An add only walks the block of days it joins; a remove that breaks the longest
+ * block rescans the run days once.
+ */
+public class StreakView extends RunView {
+
+    public record Streaks(int current, int longest, LocalDate longestEnd) {}
+
+    private final Clock clock;
+    private final Map<Long, Integer> runsPerDay = new HashMap<>();
+    private final TreeSet<Long> days = new TreeSet<>();
+    private int longest;
+    private long longestEnd;
+
+    public StreakView(Clock clock) {
+        this.clock = clock;
+    }
+
+    public synchronized Streaks streaks() {
+        long day = LocalDate.now(clock).toEpochDay();
+        if (!days.contains(day)) day--;
+        int current = 0;
+        while (days.contains(day - current)) current++;
+        return new Streaks(current, longest, longest == 0 ? null : LocalDate.ofEpochDay(longestEnd));
+    }
+
+    @Override
+    protected void seed(RunTable table) {
+        runsPerDay.clear();
+        days.clear();
+        for (int i = 0; i < table.size(); i++) runsPerDay.merge((long) table.epochDay(i), 1, Integer::sum);
+        days.addAll(runsPerDay.keySet());
+        rescan();
+    }
+
+    @Override
+    protected void onAdd(Run run, boolean live) {
+        long day = run.getDate().toEpochDay();
+        if (runsPerDay.merge(day, 1, Integer::sum) > 1) return;
+        days.add(day);
+        long first = day, last = day;
+        while (days.contains(first - 1)) first--;
+        while (days.contains(last + 1)) last++;
+        int length = (int) (last - first + 1);
+        if (length > longest || length == longest && last > longestEnd) {
+            longest    = length;
+            longestEnd = last;
+        }
+    }
+
+    @Override
+    protected void onRemove(Run run) {
+        long day = run.getDate().toEpochDay();
+        Integer n = runsPerDay.get(day);
+        if (n == null) return;
+        if (n > 1) {
+            runsPerDay.put(day, n - 1);
+            return;
+        }
+        runsPerDay.remove(day);
+        days.remove(day);
+        if (day > longestEnd - longest && day <= longestEnd) rescan();
+    }
+
+    // longest block over all run days; ties go to the most recent
+    private void rescan() {
+        longest    = 0;
+        longestEnd = 0;
+        int length = 0;
+        long prev  = Long.MIN_VALUE;
+        for (long day : days) {
+            length = day == prev + 1 ? length + 1 : 1;
+            if (length >= longest) {
+                longest    = length;
+                longestEnd = day;
+            }
+            prev = day;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.text.DecimalFormatSymbols;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Console screens and history exports built in one reusable {@link StringBuilder}
+ * and written in bulk. Numbers, dates and durations are formatted by hand rather
+ * than through {@link String#format}, so a rendered row allocates nothing, and a
+ * screen reaches its stream as one write instead of a locked call per printf.
+ * {@link #fixed} prints what {@code %.Nf} would, decimal separator included; only
+ * values it can't scale exactly (huge, NaN, infinite) go through the formatter.
+ * Not thread-safe.
+ */
+public final class TextRenderer {
+
+    static final int CHUNK = 64 * 1024; // chars encoded per write
+
+    private static final String NL = System.lineSeparator();
+    private static final long[] POW10 = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000};
+    private static final DateTimeFormatter DATE_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    private final StringBuilder sb = new StringBuilder(CHUNK);
+    private final char[] chars = new char[CHUNK];
+    private final CharBuffer in = CharBuffer.wrap(chars);
+    private final ByteBuffer out;
+    private final CharsetEncoder encoder;
+    private final char decimalSeparator = DecimalFormatSymbols.getInstance().getDecimalSeparator();
+
+    // the charset System.out encodes with
+    public TextRenderer() {
+        this(Charset.defaultCharset());
+    }
+
+    public TextRenderer(Charset charset) {
+        encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        out = ByteBuffer.allocate((int) Math.ceil(CHUNK * encoder.maxBytesPerChar()));
+    }
+
+    public TextRenderer text(String s) {
+        sb.append(s);
+        return this;
+    }
+
+    public TextRenderer text(char c) {
+        sb.append(c);
+        return this;
+    }
+
+    public TextRenderer repeat(char c, int n) {
+        for (int i = 0; i < n; i++) sb.append(c);
+        return this;
+    }
+
+    public TextRenderer nl() {
+        sb.append(NL);
+        return this;
+    }
+
+    public TextRenderer num(long v) {
+        sb.append(v);
+        return this;
+    }
+
+    // where the next field starts, for pad()
+    public int mark() {
+        return sb.length();
+    }
+
+    // left-justifies what was rendered since mark to width, like %-Ns
+    public TextRenderer pad(int mark, int width) {
+        return repeat(' ', width - (sb.length() - mark));
+    }
+
+    // %.Nf, N in [0, 6]
+    public TextRenderer fixed(double v, int decimals) {
+        double scaled = Math.abs(v) * POW10[decimals];
+        long units = (long) scaled;
+        double frac = scaled - units;
+        if (!(scaled < 1e9)) {
+            sb.append(String.format("%." + decimals + "f", v));
+            return this;
+        }
+        if (Math.abs(frac - 0.5) < 1e-6) {
+            // %f rounds half-up on the shortest decimal form: at or past the double nearest the tie, that form rounds up
+            if (Math.abs(v) >= (units * 10 + 5) / (double) POW10[decimals + 1]) units++;
+        } else if (frac > 0.5) {
+            units++;
+        }
+        if (Double.doubleToRawLongBits(v) < 0) sb.append('-');
+        sb.append(units / POW10[decimals]);
+        if (decimals > 0) {
+            long f = units % POW10[decimals];
+            sb.append(decimalSeparator);
+            for (long p = POW10[decimals - 1]; p > f && p > 1; p /= 10) sb.append('0');
+            sb.append(f);
+        }
+        return this;
+    }
+
+    // hh:mm:ss, like %02d:%02d:%02d
+    public TextRenderer duration(long seconds) {
+        twoDigits(seconds / 3600).text(':');
+        twoDigits(seconds % 3600 / 60).text(':');
+        return twoDigits(seconds % 60);
+    }
+
+    // yyyy-MM-dd
+    public TextRenderer date(int epochDay) {
+        // days to civil date (proleptic Gregorian, March-based years)
+        long z   = epochDay + 719_468L;
+        long era = Math.floorDiv(z, 146_097);
+        long doe = z - era * 146_097;
+        long yoe = (doe - doe / 1_460 + doe / 36_524 - doe / 146_096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp  = (5 * doy + 2) / 153;
+        long day = doy - (153 * mp + 2) / 5 + 1;
+        long month = mp < 10 ? mp + 3 : mp - 9;
+        long year  = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 1 || year > 9_999) return text(DATE_FMT.format(LocalDate.ofEpochDay(epochDay)));
+        if (year < 1_000) sb.append('0');
+        if (year < 100)   sb.append('0');
+        if (year < 10)    sb.append('0');
+        sb.append(year).append('-');
+        twoDigits(month).text('-');
+        return twoDigits(day);
+    }
+
+    private TextRenderer twoDigits(long v) {
+        if (v < 10) sb.append('0');
+        sb.append(v);
+        return this;
+    }
+
+    public int length() {
+        return sb.length();
+    }
+
+    /** Writes the buffer if it has reached a chunk; call per row when rendering more than a screen. */
+    public void writeIfFull(OutputStream os) throws IOException {
+        if (sb.length() >= CHUNK) writeTo(os);
+    }
+
+    /** Encodes everything rendered so far to {@code os}, a chunk per write, flushes it and empties the buffer. */
+    public void writeTo(OutputStream os) throws IOException {
+        int len = sb.length();
+        encoder.reset();
+        for (int pos = 0; pos < len; ) {
+            int n = Math.min(CHUNK, len - pos);
+            sb.getChars(pos, pos + n, chars, 0);
+            in.clear().limit(n);
+            out.clear();
+            boolean last = pos + n == len;
+            encoder.encode(in, out, last);
+            if (last) encoder.flush(out);
+            pos += in.position(); // a split surrogate pair waits for the next chunk
+            os.write(out.array(), 0, out.position());
+        }
+        os.flush();
+        sb.setLength(0);
+    }
+}
@@ -0,0 +1,474 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * {@link RunRepository} that keeps runs.csv as a snapshot and appends new runs to a
+ * checksummed write-ahead log beside it ({@code runs.csv.wal}). Loading parses the
+ * snapshot and replays the log on top; replay stops at the first torn or corrupt
+ * record, reports it, and the log is cut back to the last good record before the
+ * next append. Edits are logged too: an update carries the run's id and its new
+ * fields, a delete only the id (a tombstone). Replay applies them in one pass after
+ * reading the log. Compaction writes a new snapshot (temp file, fsync, atomic rename)
+ * and then starts an empty log, so recovery replays at most {@code compactEvery}
+ * records; it is also due once edit records pass {@code garbageRatio} of the live runs.
+ *
+ * <pre>
+ * log header (16 bytes, little-endian)
+ *   int   magic       "RUNW"
+ *   short version
+ *   short reserved
+ *   long  generation  snapshot this log applies to
+ * record
+ *   int   bodyBytes
+ *   int   crc32c      over op and body
+ *   byte  op          1 = add, 2 = add with id, 3 = update, 4 = delete
+ *   body  (add)       the run fields of a {@link BinaryRunFile} record; the id is assigned on load
+ *   body  (add id)    a {@link BinaryRunFile} record: long id, then the run fields
+ *   body  (update)    long id, then the run fields
+ *   body  (delete)    long id
+ * </pre>
+ *
+ * The snapshot carries its generation in a {@code # wal-generation N} comment line,
+ * which older readers skip. A log whose generation is behind the snapshot was
+ * already folded into it (a crash between the rename and the log reset) and is
+ * discarded instead of replayed twice.
+ */
+public class WalRunRepository extends RunRepository {
+
+    static final int   MAGIC        = 0x52554E57; // "RUNW"
+    static final short VERSION      = 1;
+    static final int   HEADER_BYTES = 16;
+    static final int   RECORD_HEADER_BYTES = 9;
+    static final byte  OP_ADD       = 1;
+    static final byte  OP_ADD_ID    = 2;
+    static final byte  OP_UPDATE    = 3;
+    static final byte  OP_DELETE    = 4;
+    static final int   ADD_BYTES    = BinaryRunFile.RECORD_BYTES; // body of an add with id or an update
+    static final double DEFAULT_GARBAGE_RATIO = 0.25;
+
+    private static final String GENERATION_PREFIX = "# wal-generation ";
+    private static final Run.InputType[] TYPES = Run.InputType.values();
+
+    private final Path snapshot;
+    private final Path wal;
+    private final boolean fsync;
+    private final int compactEvery;
+    private final double garbageRatio;
+
+    private FileChannel channel;
+    private long generation = -1; // of the snapshot the log applies to; -1 until the log is read
+    private long end;             // end of the last good record
+    private int  records;         // records in the log, i.e. what a restart would replay
+    private int  garbage;         // update and delete records among them
+    private int  liveRows;        // runs in snapshot plus log, net of deletes
+
+    public WalRunRepository(String filePath) {
+        this(filePath, false, DEFAULT_COMPACT_EVERY);
+    }
+
+    /**
+     * @param fsync        force every appended batch to disk before returning
+     * @param compactEvery snapshot and reset the log after this many records (0 = never)
+     */
+    public WalRunRepository(String filePath, boolean fsync, int compactEvery) {
+        this(filePath, fsync, compactEvery, DEFAULT_GARBAGE_RATIO);
+    }
+
+    /**
+     * @param garbageRatio also compact once edit records exceed this fraction of the live runs
+     */
+    public WalRunRepository(String filePath, boolean fsync, int compactEvery, double garbageRatio) {
+        super(filePath, fsync, compactEvery);
+        this.snapshot     = Path.of(filePath);
+        this.wal          = Path.of(filePath + ".wal");
+        this.fsync        = fsync;
+        this.compactEvery = compactEvery;
+        this.garbageRatio = garbageRatio;
+    }
+
+    public Path logPath() {
+        return wal;
+    }
+
+    // runs that already have an id keep it across replay; others are numbered on load
+    @Override
+    public void appendBatch(List<Run> runs) throws IOException {
+        if (runs.isEmpty()) return;
+        ByteBuffer buf = ByteBuffer.allocate(runs.size() * (RECORD_HEADER_BYTES + ADD_BYTES))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        CRC32C crc = new CRC32C();
+        for (Run r : runs) {
+            int start = startRecord(buf, r.getId() == 0 ? OP_ADD : OP_ADD_ID, r.getId());
+            putRun(buf, r);
+            sealRecord(buf, start, crc);
+        }
+        write(buf);
+        records  += runs.size();
+        liveRows += runs.size();
+    }
+
+    @Override
+    public void appendEdits(List<RunEdit> edits) throws IOException {
+        if (edits.isEmpty()) return;
+        ByteBuffer buf = ByteBuffer.allocate(edits.size() * (RECORD_HEADER_BYTES + ADD_BYTES))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        CRC32C crc = new CRC32C();
+        int deletes = 0;
+        for (RunEdit e : edits) {
+            int start = startRecord(buf, e.isDelete() ? OP_DELETE : OP_UPDATE, e.id());
+            if (e.isDelete()) deletes++;
+            else putRun(buf, e.run());
+            sealRecord(buf, start, crc);
+        }
+        write(buf);
+        records  += edits.size();
+        garbage  += edits.size();
+        liveRows -= deletes;
+    }
+
+    // header with a placeholder length and checksum, the op, and the id unless it is 0 (legacy add)
+    private static int startRecord(ByteBuffer buf, byte op, long id) {
+        int start = buf.position();
+        buf.putInt(0).putInt(0).put(op);
+        if (op != OP_ADD) buf.putLong(id);
+        return start;
+    }
+
+    private static void putRun(ByteBuffer buf, Run r) {
+        BinaryRunFile.putRun(buf, Math.toIntExact(r.getDate().toEpochDay()), r.getDistanceMiles(),
+                r.getDurationSeconds(), r.getInputType());
+    }
+
+    private static void sealRecord(ByteBuffer buf, int start, CRC32C crc) {
+        int body = buf.position() - start - RECORD_HEADER_BYTES;
+        buf.putInt(start, body);
+        crc.reset();
+        crc.update(buf.array(), start + 8, 1 + body);
+        buf.putInt(start + 4, (int) crc.getValue());
+    }
+
+    private void write(ByteBuffer buf) throws IOException {
+        FileChannel ch = openLog();
+        buf.flip();
+        long pos = end;
+        try {
+            while (buf.hasRemaining()) pos += ch.write(buf, pos);
+            if (fsync) ch.force(false);
+            RunMetrics.bytesWritten(buf.limit());
+        } catch (IOException e) {
+            // a partial write past `end` is cut off before the next append and ignored on replay
+            closeLog();
+            throw e;
+        }
+        end = pos;
+    }
+
+    @Override
+    public boolean needsCompaction() {
+        return compactEvery > 0 && records >= compactEvery
+                || garbage > 0 && garbage > garbageRatio * Math.max(liveRows, 1);
+    }
+
+    @Override
+    public void save(List<Run> runs) {
+        closeLog();
+        try {
+            long next = Math.max(generation, snapshotGeneration()) + 1;
+            if (!writeSnapshot(runs, GENERATION_PREFIX + next)) return; // old snapshot and log still intact
+            resetLog(next);
+            liveRows = runs.size();
+        } catch (IOException e) {
+            // the new snapshot is in place; the stale log is discarded on the next open
+            System.err.println("Error resetting run log: " + e.getMessage());
+            generation = -1;
+        }
+    }
+
+    // a clean shutdown folds the log into the snapshot, so the next start replays nothing
+    @Override
+    public void checkpoint(RunTable table) {
+        if (records > 0) save(table.asList());
+    }
+
+    @Override
+    protected RunTable readTable() {
+        return replayInto(super.readTable(), HEADER_BYTES, true);
+    }
+
+    // the snapshot must be unchanged; the log may have grown
+    @Override
+    public Path stateBase() {
+        return snapshot;
+    }
+
+    @Override
+    public Path stateLog() {
+        return wal;
+    }
+
+    // the good records only: a torn tail is cut off before the next append
+    @Override
+    public long stateLogLength() {
+        return Files.exists(wal) ? end : 0;
+    }
+
+    // the table comes from a state snapshot, so its rows already have ids
+    @Override
+    public RunTable loadTail(RunTable table, long from) {
+        return replayInto(table, Math.max(from, HEADER_BYTES), false);
+    }
+
+    private RunTable replayInto(RunTable table, long from, boolean numberRows) {
+        closeLog();
+        try {
+            return replay(table, from, numberRows);
+        } catch (IOException e) {
+            System.err.println("Error reading run log: " + e.getMessage());
+            generation = -1;
+            return table;
+        }
+    }
+
+    @Override
+    public void close() {
+        closeLog();
+        super.close();
+    }
+
+    private FileChannel openLog() throws IOException {
+        if (channel != null) return channel;
+        if (generation < 0) replay(null, HEADER_BYTES, false); // find the good end (and stale logs) before writing after it
+        if (!Files.exists(wal)) resetLog(generation);
+
+        channel = FileChannel.open(wal, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() > end) channel.truncate(end);
+        return channel;
+    }
+
+    private void closeLog() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing run log: " + e.getMessage());
+        }
+        channel = null;
+    }
+
+    /**
+     * Reads the log and applies the records from byte {@code from} on to {@code table} if
+     * given (the table already reflects those before it), returning the result; sets
+     * generation, end and the record counts. Snapshot rows without an id (if
+     * {@code numberRows}), then legacy adds, are numbered after the highest stored id,
+     * the same way on every load.
+     */
+    private RunTable replay(RunTable table, long from, boolean numberRows) throws IOException {
+        long snapshotGen = snapshotGeneration();
+        generation = snapshotGen;
+        end        = HEADER_BYTES;
+        records    = 0;
+        garbage    = 0;
+        liveRows   = table == null ? 0 : table.size();
+        int  baseRows = liveRows;
+        long baseMax  = -1;   // highest id among those rows, found on the first add with an id
+        long[] baseIds = null; // sorted, only if an add's id is at or below it
+
+        // otherwise every row has an id, so only a legacy add needs the scan for the max
+        long nextId = 0;
+        if (table != null && numberRows) {
+            nextId = 1;
+            for (int i = 0; i < table.size(); i++) nextId = Math.max(nextId, table.id(i) + 1);
+            for (int i = 0; i < table.size(); i++) {
+                if (table.id(i) == 0) table.setId(i, nextId++);
+            }
+        }
+        if (!Files.exists(wal)) return table;
+
+        try (FileChannel ch = FileChannel.open(wal, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (table != null) RunMetrics.bytesRead(size);
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (size == 0) {
+                resetLog(snapshotGen); // created but never written
+                return table;
+            }
+            if (size < HEADER_BYTES || map.getInt(0) != MAGIC || map.getShort(4) != VERSION) {
+                Path aside = wal.resolveSibling(wal.getFileName() + ".corrupt");
+                System.err.println("Error reading run log: " + wal + " has no valid header; moved to " + aside);
+                Files.move(wal, aside, StandardCopyOption.REPLACE_EXISTING);
+                resetLog(snapshotGen);
+                return table;
+            }
+            long logGen = map.getLong(8);
+            if (logGen < snapshotGen) {
+                resetLog(snapshotGen); // already in the snapshot
+                return table;
+            }
+            if (logGen > snapshotGen) {
+                System.err.println("Error reading run log: generation " + logGen + " is ahead of snapshot "
+                        + snapshotGen + "; replaying it anyway");
+            }
+            generation = logGen;
+
+            CRC32C crc = new CRC32C();
+            Map<Long, Run> edits = new HashMap<>(); // id -> latest replacement, null once deleted
+            int pos = HEADER_BYTES;
+            String problem = null;
+            while (pos < size) {
+                if (size - pos < RECORD_HEADER_BYTES) { problem = "torn record header"; break; }
+                int  body = map.getInt(pos);
+                byte op   = map.get(pos + 8);
+                int  expected = bodyBytes(op);
+                if (expected < 0) { problem = "unknown record"; break; }
+                if (body != expected) { problem = "bad record length " + body; break; }
+                if (size - pos - RECORD_HEADER_BYTES < body) { problem = "torn record"; break; }
+
+                crc.reset();
+                crc.update(map.slice(pos + 8, 1 + body));
+                if ((int) crc.getValue() != map.getInt(pos + 4)) { problem = "checksum mismatch"; break; }
+
+                int  b  = pos + RECORD_HEADER_BYTES;
+                long id = op == OP_ADD ? 0 : map.getLong(b);
+                if (op != OP_ADD) b += 8;
+                if (op != OP_DELETE) {
+                    int type = map.get(b + 20);
+                    if (type < 0 || type >= TYPES.length) { problem = "unknown record"; break; }
+                }
+                boolean apply = pos >= from; // earlier records are in the table and its row count already
+                if (op == OP_DELETE || op == OP_UPDATE) {
+                    garbage++;
+                    if (op == OP_DELETE && apply) liveRows--;
+                    if (table != null && apply) edits.put(id, op == OP_DELETE ? null : readRun(map, b, id));
+                } else {
+                    // a compaction can store a run whose append was still queued; the append then lands after it
+                    boolean stored = false;
+                    if (table != null && apply && id != 0) {
+                        if (baseMax < 0) baseMax = maxId(table, baseRows);
+                        if (id <= baseMax) {
+                            if (baseIds == null) baseIds = sortedIds(table, baseRows);
+                            stored = Arrays.binarySearch(baseIds, id) >= 0;
+                        }
+                    }
+                    if (stored) {
+                        garbage++;
+                    } else {
+                        if (apply) liveRows++;
+                        if (table != null && apply) {
+                            if (id == 0) {
+                                if (nextId == 0) nextId = maxId(table, table.size()) + 1;
+                                id = nextId++;
+                            } else if (nextId != 0) {
+                                nextId = Math.max(nextId, id + 1);
+                            }
+                            table.add(map.getInt(b + 16), map.getDouble(b + 8), map.getLong(b), TYPES[map.get(b + 20)], id);
+                        }
+                    }
+                }
+                records++;
+                pos += RECORD_HEADER_BYTES + body;
+            }
+            end = pos;
+            if (problem != null && table != null) {
+                System.err.println("Run log " + wal + ": " + problem + " at byte " + pos + "; recovered "
+                        + records + " records, discarding " + (size - pos) + " trailing bytes");
+            }
+            return edits.isEmpty() ? table : applyEdits(table, edits);
+        }
+    }
+
+    private static long maxId(RunTable table, int rows) {
+        long max = 0;
+        for (int i = 0; i < rows; i++) max = Math.max(max, table.id(i));
+        return max;
+    }
+
+    private static long[] sortedIds(RunTable table, int rows) {
+        long[] ids = new long[rows];
+        for (int i = 0; i < rows; i++) ids[i] = table.id(i);
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    private static int bodyBytes(byte op) {
+        switch (op) {
+            case OP_ADD:    return BinaryRunFile.RUN_BYTES;
+            case OP_ADD_ID:
+            case OP_UPDATE: return ADD_BYTES;
+            case OP_DELETE: return 8;
+            default:        return -1;
+        }
+    }
+
+    private static Run readRun(ByteBuffer map, int b, long id) {
+        return Run.restore(LocalDate.ofEpochDay(map.getInt(b + 16)), map.getDouble(b + 8), map.getLong(b),
+                TYPES[map.get(b + 20)], id);
+    }
+
+    // one pass over the rows: replaced runs take their latest fields, deleted ones are dropped
+    private static RunTable applyEdits(RunTable table, Map<Long, Run> edits) {
+        RunTable out = new RunTable(table.size());
+        for (int i = 0; i < table.size(); i++) {
+            long id = table.id(i);
+            if (!edits.containsKey(id)) {
+                out.add(table.epochDay(i), table.miles(i), table.durationSeconds(i), table.inputType(i), id);
+                continue;
+            }
+            Run r = edits.get(id);
+            if (r != null) out.add(r);
+        }
+        return out;
+    }
+
+    // writes an empty log for `gen` beside the old one and swaps it in
+    private void resetLog(long gen) throws IOException {
+        Path tmp = wal.resolveSibling(wal.getFileName() + ".tmp");
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putLong(gen).flip();
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (header.hasRemaining()) ch.write(header);
+            ch.force(false);
+        }
+        replaceAtomically(tmp, wal);
+        generation = gen;
+        end        = HEADER_BYTES;
+        records    = 0;
+        garbage    = 0;
+    }
+
+    // from the snapshot's "# wal-generation N" line; 0 for plain runs.csv files
+    private long snapshotGeneration() throws IOException {
+        if (!Files.exists(snapshot)) return 0;
+        try (FileChannel ch = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(256);
+            while (head.hasRemaining() && ch.read(head) > 0) { }
+            String text = new String(head.array(), 0, head.position(), StandardCharsets.UTF_8);
+            for (String line : text.split("\n", 3)) {
+                line = line.trim();
+                if (!line.startsWith(GENERATION_PREFIX)) continue;
+                try {
+                    return Long.parseLong(line.substring(GENERATION_PREFIX.length()).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,72 @@
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Live progress toward this week's goal: miles per Sunday-to-Saturday week, kept from
+ * run events, with the goal derived from last week's total the same way
+ * {@link RunService#getNextWeeklyGoalMiles()} does. A read is two map lookups.
+ */
+public class WeeklyProgressView extends RunView {
+
+    public record Progress(LocalDate weekStart, double goalMiles, double milesThisWeek, double milesRemaining,
+                           int runsThisWeek) {
+        public double fraction() {
+            return goalMiles == 0 ? 0 : Math.min(1.0, milesThisWeek / goalMiles);
+        }
+    }
+
+    private static final class Week {
+        int runs;
+        double miles;
+    }
+
+    private final Clock clock;
+    private final Map<Long, Week> weeks = new HashMap<>(); // keyed by the week's Sunday, as an epoch day
+
+    public WeeklyProgressView(Clock clock) {
+        this.clock = clock;
+    }
+
+    public synchronized Progress progress() {
+        long start = weekStart(LocalDate.now(clock).toEpochDay());
+        Week last = weeks.get(start - 7), current = weeks.get(start);
+        double lastMiles = last == null ? 0 : last.miles;
+        double miles     = current == null ? 0 : current.miles;
+        double goal      = RunService.weeklyGoalAfter(lastMiles);
+        return new Progress(LocalDate.ofEpochDay(start), goal, miles, Math.max(0, goal - miles),
+                current == null ? 0 : current.runs);
+    }
+
+    @Override
+    protected void seed(RunTable table) {
+        weeks.clear();
+        for (int i = 0; i < table.size(); i++) add(table.epochDay(i), table.miles(i));
+    }
+
+    @Override
+    protected void onAdd(Run run, boolean live) {
+        add(run.getDate().toEpochDay(), run.getDistanceMiles());
+    }
+
+    @Override
+    protected void onRemove(Run run) {
+        long key = weekStart(run.getDate().toEpochDay());
+        Week w = weeks.get(key);
+        if (w == null) return;
+        if (--w.runs == 0) weeks.remove(key); // an empty week starts again from exactly zero
+        else w.miles -= run.getDistanceMiles();
+    }
+
+    private void add(long epochDay, double miles) {
+        Week w = weeks.computeIfAbsent(weekStart(epochDay), k -> new Week());
+        w.runs++;
+        w.miles += miles;
+    }
+
+    // epoch day 0 was a Thursday, so Sundays are 3 mod 7
+    static long weekStart(long epochDay) {
+        return Math.floorDiv(epochDay + 4, 7) * 7 - 4;
+    }
+}